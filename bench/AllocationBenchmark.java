@@ -0,0 +1,278 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.ref.Cleaner;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Measures the allocation cost of guarded objects, as paid by a service that creates one per
+ * request.
+ *
+ * <p>A single thread allocates guarded objects and drops them immediately. Every object shape of
+ * the examples is measured with each way of cleaning up:</p>
+ * <ul>
+ *   <li><b>None</b> - no cleanup at all, the baseline</li>
+ *   <li><b>Finalize</b> - a <code>finalize()</code> method</li>
+ *   <li><b>Cleaner</b> - registration with a <code>java.lang.ref.Cleaner</code></li>
+ *   <li><b>Phantom</b> - a <code>PhantomReference</code> kept in a set and drained by a reaper,
+ *   as in {@link SafePhantomSyncRWExample}</li>
+ * </ul>
+ *
+ * <p>Reported are the allocation rate in objects and in bytes allocated by the allocating thread,
+ * the young GC frequency, and the promotion rate: the growth of the old generation over the young
+ * GCs, taken from GC notifications, in total and per allocated object. An object without cleanup
+ * dies young. A finalizable object is still reachable from the finalizer queue at the first GC that
+ * finds it unreachable, so it is copied again or promoted, together with everything it references,
+ * and only reclaimed by a later GC.</p>
+ *
+ * <p>The example classes themselves are not allocated: each is tied to one way of cleaning up, and
+ * reserves from the {@link CleanupBudget}, which would throttle the allocating thread. Instead the
+ * Sync, RW and Volatile classes below carry only what the technique of
+ * {@link SafeFinalizeSyncExample}, {@link SafeFinalizeSyncRWExample} and
+ * {@link SafeFinalizeVolatileFieldExample} adds: nothing beyond the monitor, a read/write lock, and
+ * a volatile counter. Leak tracking, the budget and the closed flag are left out, and the cleanups
+ * are only counted. The unsafe and updater examples have the same shape as the volatile one and
+ * are not repeated.</p>
+ *
+ * <p>Each variant runs in its own JVM with a fixed young generation, <code>-Xmn64m</code>, so that
+ * GC frequencies are comparable.</p>
+ *
+ * <pre>
+ * java -cp out AllocationBenchmark
+ * java -cp out AllocationBenchmark RW.Finalize RW.Phantom
+ * </pre>
+ */
+public final class AllocationBenchmark {
+    static final String[] SHAPES = {"Sync", "RW", "Volatile"};
+    static final String[] CLEANUPS = {"None", "Finalize", "Cleaner", "Phantom"};
+
+    private static final String[] JVM_ARGS = {"-Xmx1g", "-Xmn64m"};
+
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<Object>();
+    private static final Set<Reference<?>> LIVE = ConcurrentHashMap.newKeySet();
+
+    // Incremented by the finalizer, Cleaner and reaper threads
+    static final LongAdder CLEANED = new LongAdder();
+
+    static {
+        Thread reaper = new Thread(() -> {
+            while (true) {
+                try {
+                    Reference<?> ref = QUEUE.remove();
+                    do {
+                        LIVE.remove(ref);
+                        CLEANED.increment();
+                    } while ((ref = QUEUE.poll()) != null);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "phantom-reaper");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    private static final class CleanupTask implements Runnable {
+        public void run() {
+            CLEANED.increment();
+        }
+    }
+
+    private static final CleanupTask CLEANUP = new CleanupTask();
+
+    static void register(Object guarded, String cleanup) {
+        if (cleanup.equals("Cleaner")) {
+            CLEANER.register(guarded, CLEANUP);
+        } else if (cleanup.equals("Phantom")) {
+            LIVE.add(new PhantomReference<Object>(guarded, QUEUE));
+        }
+    }
+
+    /*
+     * The shapes of the examples, without and with a finalizer.
+     */
+
+    static class Sync {
+        Sync(String cleanup) {
+            register(this, cleanup);
+        }
+    }
+
+    static final class FinalizeSync extends Sync {
+        FinalizeSync() {
+            super("Finalize");
+        }
+
+        protected synchronized void finalize() {
+            CLEANED.increment();
+        }
+    }
+
+    static class RW {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        RW(String cleanup) {
+            register(this, cleanup);
+        }
+    }
+
+    static final class FinalizeRW extends RW {
+        FinalizeRW() {
+            super("Finalize");
+        }
+
+        protected synchronized void finalize() {
+            CLEANED.increment();
+        }
+    }
+
+    static class Volatile {
+        static int STATIC_COUNTER = 0;
+
+        volatile int counter = STATIC_COUNTER;
+
+        Volatile(String cleanup) {
+            register(this, cleanup);
+        }
+    }
+
+    static final class FinalizeVolatile extends Volatile {
+        FinalizeVolatile() {
+            super("Finalize");
+        }
+
+        protected void finalize() {
+            STATIC_COUNTER = counter;
+            CLEANED.increment();
+        }
+    }
+
+    interface Allocator {
+        Object allocate();
+    }
+
+    static Allocator allocator(String shape, final String cleanup) {
+        boolean finalize = cleanup.equals("Finalize");
+        if (shape.equals("Sync")) {
+            return finalize ? FinalizeSync::new : () -> new Sync(cleanup);
+        } else if (shape.equals("RW")) {
+            return finalize ? FinalizeRW::new : () -> new RW(cleanup);
+        } else if (shape.equals("Volatile")) {
+            return finalize ? FinalizeVolatile::new : () -> new Volatile(cleanup);
+        }
+        throw new IllegalArgumentException(shape);
+    }
+
+    /**
+     * Counts young GCs and the bytes they promote, from GC notifications.
+     */
+    static final class GcListener implements NotificationListener {
+        final AtomicLong youngGcs = new AtomicLong();
+        final AtomicLong oldGcs = new AtomicLong();
+        final AtomicLong promoted = new AtomicLong();
+
+        public void handleNotification(Notification notification, Object handback) {
+            if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            if (!info.getGcAction().equals("end of minor GC")) {
+                oldGcs.incrementAndGet();
+                return;
+            }
+            youngGcs.incrementAndGet();
+            Map<String, MemoryUsage> before = info.getGcInfo().getMemoryUsageBeforeGc();
+            Map<String, MemoryUsage> after = info.getGcInfo().getMemoryUsageAfterGc();
+            for (Map.Entry<String, MemoryUsage> pool : after.entrySet()) {
+                if (pool.getKey().contains("Old") || pool.getKey().contains("Tenured")) {
+                    long growth = pool.getValue().getUsed() - before.get(pool.getKey()).getUsed();
+                    if (growth > 0) {
+                        promoted.addAndGet(growth);
+                    }
+                }
+            }
+        }
+
+        void reset() {
+            youngGcs.set(0);
+            oldGcs.set(0);
+            promoted.set(0);
+        }
+    }
+
+    static void run(String variant) throws Exception {
+        String[] parts = variant.split("\\.");
+        Allocator allocator = allocator(parts[0], parts[1]);
+
+        GcListener listener = new GcListener();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+        }
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        Object last = null;
+        long deadline = System.nanoTime() + Bench.WARMUP_MILLIS * 1000000L;
+        while (System.nanoTime() < deadline) {
+            for (int i = 0; i < 1000; i++) {
+                last = allocator.allocate();
+            }
+        }
+
+        listener.reset();
+        long bytes = threads.getCurrentThreadAllocatedBytes();
+        long objects = 0;
+        long start = System.nanoTime();
+        deadline = start + Bench.MEASURE_MILLIS * 1000000L;
+        while (System.nanoTime() < deadline) {
+            for (int i = 0; i < 1000; i++) {
+                last = allocator.allocate();
+            }
+            objects += 1000;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        bytes = threads.getCurrentThreadAllocatedBytes() - bytes;
+        Reference.reachabilityFence(last);
+
+        System.out.printf("%-18s %12.0f %10.1f %10.1f %12.2f %14.1f %7d%n", variant,
+                objects / seconds, bytes / seconds / 1048576.0,
+                listener.youngGcs.get() / seconds, listener.promoted.get() / seconds / 1048576.0,
+                (double) listener.promoted.get() / objects, listener.oldGcs.get());
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1 && args[0].startsWith("run:")) {
+            run(args[0].substring(4));
+            System.exit(0);
+        }
+        System.out.printf("%-18s %12s %10s %10s %12s %14s %7s%n", "Variant", "Objects/s", "Alloc MB/s",
+                "Young GC/s", "Promoted MB/s", "Promoted B/obj", "Old GCs");
+        if (args.length > 0) {
+            for (String variant : args) {
+                Bench.forkWith(JVM_ARGS, AllocationBenchmark.class, "run:" + variant);
+            }
+            return;
+        }
+        for (String shape : SHAPES) {
+            for (String cleanup : CLEANUPS) {
+                Bench.forkWith(JVM_ARGS, AllocationBenchmark.class, "run:" + shape + "." + cleanup);
+            }
+        }
+    }
+}
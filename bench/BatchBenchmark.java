@@ -0,0 +1,76 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Measures batched cleanup of {@link SafeFinalizeSyncRWInstrumentedExample} for different batch
+ * sizes.
+ *
+ * <p>A large number of preallocated instances is left to the finalizer at once, and their cleanups
+ * are scheduled either one by one on a {@link CleanupScheduler} or in batches on a
+ * {@link CleanupBatcher}. The throughput is the number of cleanups completed per second, from the
+ * GC that finds the instances unreachable to the last cleanup, and the finalizer cost is the CPU
+ * time of the JVM finalizer thread per instance. Each batch size runs in its own JVM, and the last
+ * of several rounds is reported.</p>
+ *
+ * <p>Leak reports are disabled.</p>
+ *
+ * <ul>
+ *   <li><code>bench.instances</code> - instances per round (default 200000)</li>
+ *   <li><code>bench.rounds</code> - rounds (default 5)</li>
+ *   <li><code>bench.batchSizes</code> - batch sizes, 0 for unbatched (default 0,1,16,256,4096)</li>
+ * </ul>
+ *
+ * <pre>
+ * java -cp out BatchBenchmark
+ * </pre>
+ */
+public final class BatchBenchmark {
+    private static final int INSTANCES = Integer.getInteger("bench.instances", 200000);
+    private static final int ROUNDS = Integer.getInteger("bench.rounds", 5);
+
+    static void run(String batchSize) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName stats = new ObjectName("finalize.examples:type=GuardedObjectStats,name="
+                + SafeFinalizeSyncRWInstrumentedExample.class.getName());
+        long finalizer = FinalizerAllocationCheck.finalizerThread().getId();
+
+        double cleanupsPerSecond = 0;
+        double finalizerNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < INSTANCES; i++) {
+                new SafeFinalizeSyncRWInstrumentedExample();
+            }
+            long target = (Long) server.getAttribute(stats, "Created");
+            long cpu = threads.getThreadCpuTime(finalizer);
+            long start = System.nanoTime();
+            System.gc();
+            while ((Long) server.getAttribute(stats, "Cleaned") < target) {
+                Thread.sleep(1);
+                if ((Long) server.getAttribute(stats, "Finalized") < target) {
+                    System.gc();
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            cleanupsPerSecond = INSTANCES / (elapsed / 1e9);
+            finalizerNanos = (double) (threads.getThreadCpuTime(finalizer) - cpu) / INSTANCES;
+        }
+        System.out.printf("%-10s %14.0f %16.1f%n", batchSize.equals("0") ? "unbatched" : batchSize,
+                cleanupsPerSecond, finalizerNanos);
+        System.exit(0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1) {
+            run(args[0]);
+            return;
+        }
+        System.out.printf("%-10s %14s %16s%n", "Batch", "Cleanups/s", "Finalizer ns/obj");
+        for (String batchSize : System.getProperty("bench.batchSizes", "0,1,16,256,4096").split(",")) {
+            Bench.forkWith(new String[] {"-Dleak.level=DISABLED", "-Dreaper.preallocate=true",
+                    "-Dreaper.batchSize=" + batchSize}, BatchBenchmark.class, batchSize);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A minimal, dependency free measurement harness shared by the benchmarks in this directory.
+ *
+ * <p>It follows the JMH model closely enough for the comparisons made here: a timed warm-up
+ * phase, followed by a timed measurement phase, with every thread running its own operation
+ * instance in a tight loop. Results are reported as throughput (ops/s) and average time per
+ * operation per thread (ns/op).</p>
+ *
+ * <p>Like JMH, every benchmark should run in its own JVM (see {@link #fork(Class, String...)}),
+ * so that the type profile collected for one technique does not turn the call sites of the
+ * next one megamorphic.</p>
+ *
+ * <p>The harness is configured with system properties so that all benchmarks share the same
+ * knobs:</p>
+ * <ul>
+ *   <li><code>bench.warmup</code> - warm-up time in milliseconds (default 2000)</li>
+ *   <li><code>bench.time</code> - measurement time in milliseconds (default 3000)</li>
+ *   <li><code>bench.threads</code> - comma separated thread counts, <code>N</code> means all
+ *   available processors (default <code>1,2,4,8,N</code>)</li>
+ *   <li><code>bench.payload</code> - CPU tokens burnt by {@link #payload(long)} inside each
+ *   simulated work call (default 10)</li>
+ * </ul>
+ */
+final class Bench {
+    static final long WARMUP_MILLIS = Long.getLong("bench.warmup", 2000L);
+    static final long MEASURE_MILLIS = Long.getLong("bench.time", 3000L);
+    static final long PAYLOAD = Long.getLong("bench.payload", 10L);
+
+    /**
+     * Sink for computed values, preventing dead code elimination of payloads.
+     */
+    static volatile long SINK;
+
+    private static long seed = System.nanoTime();
+
+    private Bench() {
+    }
+
+    /**
+     * A single benchmarked operation, created once per thread.
+     */
+    interface Op {
+        void invoke() throws Exception;
+    }
+
+    /**
+     * Creates the operation each benchmark thread will repeatedly invoke.
+     */
+    interface OpFactory {
+        Op create() throws Exception;
+    }
+
+    static final class Result {
+        final String name;
+        final int threads;
+        final long ops;
+        final long nanos;
+
+        Result(String name, int threads, long ops, long nanos) {
+            this.name = name;
+            this.threads = threads;
+            this.ops = ops;
+            this.nanos = nanos;
+        }
+
+        double opsPerSecond() {
+            return ops * 1e9 / nanos;
+        }
+
+        double nanosPerOp() {
+            return ops == 0 ? Double.NaN : (double) nanos * threads / ops;
+        }
+    }
+
+    /**
+     * Burns CPU proportionally to the number of tokens, in the spirit of JMH's
+     * <code>Blackhole.consumeCPU</code>. Used in place of the <code>Thread.sleep</code>
+     * calls of the examples so that the measured time is dominated by the epilogue
+     * and not by the scheduler.
+     */
+    static void payload(long tokens) {
+        long t = seed;
+        for (long i = tokens; i > 0; i--) {
+            t += (t * 0x5DEECE66DL + 0xBL + i) & 0xFFFFFFFFFFFFL;
+        }
+        if (t == 42) {
+            SINK += t;
+        }
+    }
+
+    /**
+     * Returns <code>Executors.newVirtualThreadPerTaskExecutor()</code>, or null when running on a
+     * JDK without virtual threads. Looked up reflectively so the benchmarks compile on older JDKs.
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Class.forName("java.util.concurrent.Executors")
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Before JDK 21, or a preview JDK without --enable-preview
+            return null;
+        }
+    }
+
+    static int[] threadCounts() {
+        String spec = System.getProperty("bench.threads", "1,2,4,8,N");
+        String[] parts = spec.split(",");
+        int[] counts = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i].trim();
+            counts[i] = part.equalsIgnoreCase("N") ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(part);
+        }
+        return counts;
+    }
+
+    static Result run(String name, int threads, OpFactory factory) throws Exception {
+        final Op[] ops = new Op[threads];
+        for (int i = 0; i < threads; i++) {
+            ops[i] = factory.create();
+        }
+
+        final long[] counts = new long[threads];
+        final CountDownLatch start = new CountDownLatch(1);
+        final Phase phase = new Phase();
+        List<Thread> workers = new ArrayList<Thread>(threads);
+        final Throwable[] failure = new Throwable[1];
+
+        for (int i = 0; i < threads; i++) {
+            final int index = i;
+            Thread worker = new Thread(new Runnable() {
+                public void run() {
+                    Op op = ops[index];
+                    try {
+                        start.await();
+                        while (phase.state == Phase.WARMUP) {
+                            op.invoke();
+                        }
+                        long n = 0;
+                        while (phase.state == Phase.MEASURE) {
+                            op.invoke();
+                            n++;
+                        }
+                        counts[index] = n;
+                    } catch (Throwable t) {
+                        failure[0] = t;
+                    }
+                }
+            }, name + "-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+
+        start.countDown();
+        Thread.sleep(WARMUP_MILLIS);
+        long begin = System.nanoTime();
+        phase.state = Phase.MEASURE;
+        Thread.sleep(MEASURE_MILLIS);
+        phase.state = Phase.DONE;
+        long end = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (failure[0] != null) {
+            throw new RuntimeException("Benchmark " + name + " failed", failure[0]);
+        }
+
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return new Result(name, threads, total, end - begin);
+    }
+
+    /**
+     * Runs <code>main</code> of the given class in a fresh JVM with the same class path and JVM
+     * options as this one, waiting for it to complete. Output is inherited.
+     */
+    static void fork(Class<?> main, String... args) throws Exception {
+        forkWith(new String[0], main, args);
+    }
+
+    /**
+     * Like {@link #fork(Class, String...)}, appending additional JVM options to the inherited ones.
+     */
+    static void forkWith(String[] jvmArgs, Class<?> main, String... args) throws Exception {
+        int exit = new ProcessBuilder(command(jvmArgs, main, args)).inheritIO().start().waitFor();
+        if (exit != 0) {
+            throw new RuntimeException("Forked benchmark " + main.getName() + " exited with " + exit);
+        }
+    }
+
+    /**
+     * Like {@link #forkWith(String[], Class, String...)}, returning the standard output and error
+     * of the forked JVM instead of inheriting them.
+     */
+    static String forkCapture(String[] jvmArgs, Class<?> main, String... args) throws Exception {
+        Process process = new ProcessBuilder(command(jvmArgs, main, args)).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes());
+        int exit = process.waitFor();
+        if (exit != 0) {
+            throw new RuntimeException("Forked benchmark " + main.getName() + " exited with " + exit + ":\n" + output);
+        }
+        return output;
+    }
+
+    static List<String> command(String[] jvmArgs, Class<?> main, String... args) {
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        for (String jvmArg : jvmArgs) {
+            command.add(jvmArg);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(main.getName());
+        for (String arg : args) {
+            command.add(arg);
+        }
+        return command;
+    }
+
+    /**
+     * Discards the standard error of this JVM, where the examples report every step. Messages are
+     * dropped before they are encoded, since encoding allocates a buffer per line and would be
+     * measured along with the technique.
+     */
+    static void silenceStderr() {
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()) {
+            @Override
+            public void println(String x) {
+            }
+        });
+    }
+
+    static void printHeader() {
+        System.out.printf("%-40s %8s %16s %12s%n", "Benchmark", "Threads", "ops/s", "ns/op");
+    }
+
+    static void print(Result result) {
+        System.out.printf("%-40s %8d %16.0f %12.2f%n",
+                result.name, result.threads, result.opsPerSecond(), result.nanosPerOp());
+    }
+
+    private static final class Phase {
+        static final int WARMUP = 0;
+        static final int MEASURE = 1;
+        static final int DONE = 2;
+
+        volatile int state = WARMUP;
+    }
+}
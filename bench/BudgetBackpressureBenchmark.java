@@ -0,0 +1,138 @@
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.InstanceNotFoundException;
+import javax.management.ObjectName;
+
+/**
+ * Shows the backpressure {@link CleanupBudget} applies to a thread allocating guarded objects
+ * faster than they are cleaned up.
+ *
+ * <p>Every example runs in its own JVM with a small handle limit, in two modes:</p>
+ * <ul>
+ *   <li><b>drop</b> - instances are dropped as soon as they are created, and the allocating thread
+ *   is held back until the finalizer and reapers have cleaned up enough of them. Every allocation
+ *   must succeed, and the reserved handles must never exceed the limit.</li>
+ *   <li><b>retain</b> - every instance is kept, so a GC frees nothing. The allocation beyond the
+ *   limit must fail with an <code>OutOfMemoryError</code> after the bounded wait.</li>
+ * </ul>
+ *
+ * <p>{@link SafeFinalizeSyncRWInstrumentedExample} is also run in drop mode with a reaper of one
+ * thread, a queue of one task and the <code>DROP</code> overflow policy, so that cleanups are
+ * discarded. A discarded cleanup must still give back its reservation, or the budget fills up with
+ * leaked reservations and allocation fails although every instance is gone.</p>
+ *
+ * <p>Reported are the allocation rate, the peak of reserved handles, the GCs triggered and the
+ * sleeps taken by reservations, the cleanups dropped by the reaper, and the number of instances
+ * created before a failure together with the time the failing reservation took. Leak reports are
+ * disabled and the messages of the examples are discarded.</p>
+ *
+ * <ul>
+ *   <li><code>bench.instances</code> - instances allocated in drop mode (default 200000)</li>
+ *   <li><code>bench.maxHandles</code> - handle limit of the budget (default 10000)</li>
+ * </ul>
+ *
+ * <pre>
+ * java -cp out BudgetBackpressureBenchmark
+ * </pre>
+ */
+public final class BudgetBackpressureBenchmark {
+    private static final int INSTANCES = Integer.getInteger("bench.instances", 200000);
+    private static final long MAX_HANDLES = Long.getLong("bench.maxHandles", 10000L);
+
+    static final String[] SUBJECTS = {
+        "SafeFinalizeSyncExample",
+        "SafeFinalizeVolatileFieldExample",
+        "SafeFinalizeSyncRWExample",
+        "SafePhantomSyncRWExample",
+        "SafeCleanerSyncRWExample",
+    };
+
+    private static final String[] DROPPING_REAPER = {
+        "-Dreaper.overflow=DROP", "-Dreaper.minThreads=1", "-Dreaper.maxThreads=1", "-Dreaper.queueCapacity=1"
+    };
+
+    /**
+     * Cleanups the reaper of the subject has dropped, or -1 if it does not count them.
+     */
+    static long dropped(String subject) throws Exception {
+        try {
+            return (Long) ManagementFactory.getPlatformMBeanServer().getAttribute(
+                    new ObjectName("finalize.examples:type=GuardedObjectStats,name=" + subject), "Dropped");
+        } catch (InstanceNotFoundException e) {
+            return -1;
+        }
+    }
+
+    static void run(String subject, boolean retain) throws Exception {
+        Bench.silenceStderr();
+        Constructor<?> constructor = Class.forName(subject).getDeclaredConstructor();
+        constructor.setAccessible(true);
+        CleanupBudget budget = CleanupBudget.shared();
+        List<Object> retained = new ArrayList<Object>();
+
+        long peak = 0;
+        int created = 0;
+        long failedNanos = 0;
+        long start = System.nanoTime();
+        for (; created < INSTANCES; created++) {
+            long before = System.nanoTime();
+            Object instance;
+            try {
+                instance = constructor.newInstance();
+            } catch (InvocationTargetException e) {
+                if (!(e.getCause() instanceof OutOfMemoryError)) {
+                    throw e;
+                }
+                failedNanos = System.nanoTime() - before;
+                break;
+            }
+            if (retain) {
+                retained.add(instance);
+            }
+            peak = Math.max(peak, budget.getReservedHandles());
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long dropped = dropped(subject);
+        String label = "DROP".equals(System.getProperty("reaper.overflow")) ? subject + "/DROP" : subject;
+        System.out.printf("%-42s %-7s %10d %12.0f %8d %8d %8d %8s %10s%n", label, retain ? "retain" : "drop",
+                created, created / seconds, peak, budget.getCollections(), budget.getWaits(),
+                dropped < 0 ? "-" : String.valueOf(dropped),
+                failedNanos > 0 ? String.format("%.1f", failedNanos / 1e6) : "-");
+
+        if (peak > budget.getMaxHandles()) {
+            System.out.println("FAIL: reserved handles exceeded the limit");
+            System.exit(1);
+        }
+        if (retain != (failedNanos > 0)) {
+            System.out.println(retain ? "FAIL: allocation beyond the limit succeeded"
+                    : "FAIL: allocation failed although instances were dropped");
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("run")) {
+            String[] variant = args[1].split("\\.");
+            run(variant[0], variant[1].equals("retain"));
+        }
+        String[] jvmArgs = {"-Dbudget.maxHandles=" + MAX_HANDLES, "-Dleak.level=DISABLED"};
+        System.out.printf("%-42s %-7s %10s %12s %8s %8s %8s %8s %10s%n", "Example", "Mode", "Created",
+                "Objects/s", "Peak", "GCs", "Sleeps", "Dropped", "Fail ms");
+        for (String subject : args.length > 0 ? args : SUBJECTS) {
+            Bench.forkWith(jvmArgs, BudgetBackpressureBenchmark.class, "run", subject + ".drop");
+            Bench.forkWith(jvmArgs, BudgetBackpressureBenchmark.class, "run", subject + ".retain");
+        }
+        if (args.length == 0) {
+            String[] dropping = new String[jvmArgs.length + DROPPING_REAPER.length];
+            System.arraycopy(jvmArgs, 0, dropping, 0, jvmArgs.length);
+            System.arraycopy(DROPPING_REAPER, 0, dropping, jvmArgs.length, DROPPING_REAPER.length);
+            Bench.forkWith(dropping, BudgetBackpressureBenchmark.class, "run",
+                    SafeFinalizeSyncRWInstrumentedExample.class.getName() + ".drop");
+        }
+    }
+}
@@ -0,0 +1,218 @@
+import java.lang.ref.Cleaner;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compares <code>finalize()</code> against <code>java.lang.ref.Cleaner</code> registration.
+ *
+ * <p>Two things are measured for each object shape used by the examples:</p>
+ * <ul>
+ *   <li><b>alloc</b> - allocation throughput of guarded instances that are dropped immediately,
+ *   which includes <code>Finalizer</code> or <code>Cleaner</code> registration and the GC work
+ *   needed to get rid of them again.</li>
+ *   <li><b>latency</b> - for a single dropped instance, the time and number of GC cycles from
+ *   becoming unreachable until its cleanup has run, and until its memory has been reclaimed.
+ *   Reclamation is observed through an independent <code>PhantomReference</code>, which for a
+ *   finalizable object is only enqueued after its finalizer has run and another GC has found
+ *   it unreachable again.</li>
+ * </ul>
+ *
+ * <p>The unsafe and updater examples have the same shape as the volatile one and are not
+ * repeated. Each variant runs in its own JVM.</p>
+ *
+ * <pre>
+ * java -cp out -Dbench.threads=1,N -Dbench.samples=50 CleanerBenchmark
+ * </pre>
+ */
+public final class CleanerBenchmark {
+    private static final int SAMPLES = Integer.getInteger("bench.samples", 50);
+    private static final String[] VARIANTS = {
+            "FinalizeSync", "CleanerSync", "FinalizeRW", "CleanerRW", "FinalizeVolatile", "CleanerVolatile"
+    };
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    // Incremented by the finalizer and the Cleaner thread alike
+    static final LongAdder CLEANED = new LongAdder();
+
+    static final class FinalizeSync {
+        protected synchronized void finalize() {
+            CLEANED.increment();
+        }
+    }
+
+    static final class CleanerSync {
+        CleanerSync() {
+            CLEANER.register(this, new CleanupTask());
+        }
+    }
+
+    static final class FinalizeRW {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        protected synchronized void finalize() {
+            lock.writeLock().lock();
+            try {
+                CLEANED.increment();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    static final class CleanerRW {
+        CleanerRW() {
+            CLEANER.register(this, new LockingCleanupTask(new ReentrantReadWriteLock()));
+        }
+    }
+
+    static final class FinalizeVolatile {
+        static int STATIC_COUNTER = 0;
+
+        private volatile int counter = STATIC_COUNTER;
+
+        protected void finalize() {
+            STATIC_COUNTER = counter;
+            CLEANED.increment();
+        }
+    }
+
+    static final class CleanerVolatile {
+        private volatile int counter;
+
+        CleanerVolatile() {
+            CLEANER.register(this, new CleanupTask());
+        }
+    }
+
+    private static class CleanupTask implements Runnable {
+        public void run() {
+            CLEANED.increment();
+        }
+    }
+
+    private static class LockingCleanupTask implements Runnable {
+        private final ReentrantReadWriteLock lock;
+
+        LockingCleanupTask(ReentrantReadWriteLock lock) {
+            this.lock = lock;
+        }
+
+        public void run() {
+            lock.writeLock().lock();
+            try {
+                CLEANED.increment();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    static Object create(String variant) {
+        if (variant.equals("FinalizeSync")) {
+            return new FinalizeSync();
+        } else if (variant.equals("CleanerSync")) {
+            return new CleanerSync();
+        } else if (variant.equals("FinalizeRW")) {
+            return new FinalizeRW();
+        } else if (variant.equals("CleanerRW")) {
+            return new CleanerRW();
+        } else if (variant.equals("FinalizeVolatile")) {
+            return new FinalizeVolatile();
+        } else if (variant.equals("CleanerVolatile")) {
+            return new CleanerVolatile();
+        }
+        throw new IllegalArgumentException(variant);
+    }
+
+    static void allocation(final String variant) throws Exception {
+        Bench.OpFactory factory = new Bench.OpFactory() {
+            public Bench.Op create() {
+                return new Bench.Op() {
+                    public void invoke() {
+                        CleanerBenchmark.create(variant);
+                    }
+                };
+            }
+        };
+        for (int threads : Bench.threadCounts()) {
+            Bench.print(Bench.run(variant + ".alloc", threads, factory));
+        }
+    }
+
+    static void latency(String variant) throws Exception {
+        // Let the cleanup backlog of the allocation phase drain so it does not skew the counts
+        long settled;
+        do {
+            settled = CLEANED.sum();
+            System.gc();
+            System.runFinalization();
+            Thread.sleep(200);
+        } while (settled != CLEANED.sum());
+
+        ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+        long cleanNanos = 0, reclaimNanos = 0, cleanGcs = 0, reclaimGcs = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            long before = CLEANED.sum();
+            Object guarded = create(variant);
+            PhantomReference<Object> tracker = new PhantomReference<Object>(guarded, queue);
+            guarded = null;
+
+            long start = System.nanoTime();
+            long cleanedAt = 0;
+            int gcs = 0;
+            Reference<?> reclaimed = null;
+            while (reclaimed == null) {
+                System.gc();
+                gcs++;
+                // Give the reaper a chance to run the cleanup
+                for (int spin = 0; spin < 1000 && cleanedAt == 0; spin++) {
+                    if (CLEANED.sum() != before) {
+                        cleanedAt = System.nanoTime();
+                        cleanGcs += gcs;
+                    } else {
+                        Thread.sleep(0, 100000);
+                    }
+                }
+                reclaimed = queue.remove(10);
+                if (gcs > 100) {
+                    throw new IllegalStateException(variant + " was not reclaimed after 100 GCs");
+                }
+            }
+            reclaimNanos += System.nanoTime() - start;
+            reclaimGcs += gcs;
+            while (cleanedAt == 0) {
+                // Reclaimed before the reaper got to the cleanup
+                if (CLEANED.sum() != before) {
+                    cleanedAt = System.nanoTime();
+                    cleanGcs += gcs;
+                } else {
+                    Thread.yield();
+                }
+            }
+            cleanNanos += cleanedAt - start;
+            tracker.clear();
+        }
+
+        System.out.printf("%-24s clean %10.1f us %5.2f GCs   reclaim %10.1f us %5.2f GCs%n",
+                variant + ".latency",
+                cleanNanos / 1e3 / SAMPLES, (double) cleanGcs / SAMPLES,
+                reclaimNanos / 1e3 / SAMPLES, (double) reclaimGcs / SAMPLES);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            Bench.printHeader();
+            for (String variant : VARIANTS) {
+                Bench.fork(CleanerBenchmark.class, variant);
+            }
+            return;
+        }
+
+        allocation(args[0]);
+        latency(args[0]);
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Allocation rate of guarded objects that are closed before being dropped, against objects that
+ * are only dropped and left to the finalizer.
+ *
+ * <p>Mirrors the <code>close()</code> fast path of {@link SafeFinalizeSyncExample},
+ * {@link SafeFinalizeSyncRWExample} and {@link SafeFinalizeVolatileFieldExample}; the unsafe and
+ * updater examples disarm the same way as the volatile one. A closed object is still registered
+ * with the finalizer, but its finalizer returns immediately, so the cost of the static copy and of
+ * scheduling the cleanup on the reaper is only paid for objects that leak.</p>
+ *
+ * <pre>
+ * java -cp out -Dbench.threads=1,N DisarmBenchmark
+ * </pre>
+ */
+public final class DisarmBenchmark {
+    private static final String[] VARIANTS = {"Sync", "RW", "Volatile"};
+    private static final String[] MODES = {"Drop", "Close"};
+
+    private static final ExecutorService REAPER = Executors.newFixedThreadPool(2, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "reaper");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static final AtomicLong cleaned = new AtomicLong();
+
+    interface Guarded extends AutoCloseable {
+        void close();
+    }
+
+    static final class Sync implements Guarded {
+        private boolean closed;
+
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                cleaned.incrementAndGet();
+            }
+        }
+
+        protected synchronized void finalize() {
+            if (closed) {
+                return;
+            }
+            cleaned.incrementAndGet();
+        }
+    }
+
+    static final class RW implements Guarded {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private boolean closed;
+
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            new CleanupTask(lock).run();
+        }
+
+        private static class CleanupTask implements Runnable {
+            private final ReentrantReadWriteLock lock;
+
+            CleanupTask(ReentrantReadWriteLock lock) {
+                this.lock = lock;
+            }
+
+            public void run() {
+                try {
+                    lock.writeLock().lock();
+                    cleaned.incrementAndGet();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+
+        protected synchronized void finalize() {
+            if (closed) {
+                return;
+            }
+            REAPER.execute(new CleanupTask(lock));
+        }
+    }
+
+    static final class Volatile implements Guarded {
+        static int STATIC_COUNTER = 0;
+
+        private volatile int counter = STATIC_COUNTER;
+        private volatile int closed;
+
+        private static final AtomicIntegerFieldUpdater<Volatile> CLOSED =
+                AtomicIntegerFieldUpdater.newUpdater(Volatile.class, "closed");
+
+        public void close() {
+            if (CLOSED.compareAndSet(this, 0, 1)) {
+                cleaned.incrementAndGet();
+            }
+        }
+
+        protected void finalize() {
+            if (closed != 0) {
+                return;
+            }
+            STATIC_COUNTER = counter;
+            cleaned.incrementAndGet();
+        }
+    }
+
+    static Guarded create(String variant) {
+        if (variant.equals("Sync")) {
+            return new Sync();
+        } else if (variant.equals("RW")) {
+            return new RW();
+        } else if (variant.equals("Volatile")) {
+            return new Volatile();
+        }
+        throw new IllegalArgumentException(variant);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2) {
+            final String variant = args[0];
+            final boolean close = args[1].equals("Close");
+            Bench.OpFactory factory = new Bench.OpFactory() {
+                public Bench.Op create() {
+                    return new Bench.Op() {
+                        public void invoke() {
+                            Guarded guarded = DisarmBenchmark.create(variant);
+                            if (close) {
+                                guarded.close();
+                            }
+                        }
+                    };
+                }
+            };
+            for (int threads : Bench.threadCounts()) {
+                Bench.print(Bench.run(variant + "." + args[1], threads, factory));
+            }
+            return;
+        }
+
+        Bench.printHeader();
+        for (String variant : VARIANTS) {
+            for (String mode : MODES) {
+                Bench.fork(DisarmBenchmark.class, variant, mode);
+            }
+        }
+    }
+}
@@ -0,0 +1,318 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+import sun.misc.Unsafe;
+
+/**
+ * Measures the per-call cost of the <code>work()</code> epilogue of every example.
+ *
+ * <p>Each nested class mirrors the reachability technique of one example from <code>src/</code>,
+ * with the <code>System.gc()</code>, <code>Thread.sleep</code> and logging replaced by a
+ * configurable CPU-bound payload (see {@link Bench#payload(long)}). The unprotected
+ * {@link Broken} variant is the baseline, so the difference to it is the price of the
+ * technique.</p>
+ *
+ * <p>By default each thread works on its own instance, which measures the uncontended cost.
+ * Run with <code>-Dbench.shared=true</code> to have all threads call the same instance, which
+ * shows how the locking techniques behave under contention.</p>
+ *
+ * <pre>
+ * javac -d out src/*.java bench/*.java
+ * java -cp out -Dbench.payload=10 -Dbench.threads=1,2,4,8,N EpilogueBenchmark
+ * </pre>
+ */
+public final class EpilogueBenchmark {
+    private static final boolean SHARED = Boolean.getBoolean("bench.shared");
+    private static final String[] WORKERS = {
+            "Broken", "Monitor", "MonitorExit", "ReadWrite", "Volatile", "Ordered", "LazySet", "Fence", "Release", "Opaque",
+            "Stamped"
+    };
+
+    interface Worker {
+        void work() throws Exception;
+    }
+
+    /**
+     * Mirrors {@link BrokenFinalizeExample}: no protection at all.
+     */
+    static final class Broken implements Worker {
+        public void work() {
+            Bench.payload(Bench.PAYLOAD);
+        }
+
+        protected void finalize() {
+        }
+    }
+
+    /**
+     * Mirrors {@link SafeFinalizeSyncExample}: the monitor is held for the whole call.
+     */
+    static final class Monitor implements Worker {
+        public synchronized void work() {
+            Bench.payload(Bench.PAYLOAD);
+        }
+
+        protected synchronized void finalize() {
+        }
+    }
+
+    /**
+     * Mirrors {@link ReachabilityGuard.MonitorExitGuard}: an empty synchronized block at the end of
+     * the call, which orders the work before the finalizer without serializing it.
+     */
+    static final class MonitorExit implements Worker {
+        public void work() {
+            try {
+                Bench.payload(Bench.PAYLOAD);
+            } finally {
+                synchronized (this) {
+                }
+            }
+        }
+
+        protected synchronized void finalize() {
+        }
+    }
+
+    /**
+     * Mirrors {@link SafeFinalizeSyncRWExample}: monitor guarded read lock acquisition.
+     */
+    static final class ReadWrite implements Worker {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        public void work() {
+            ReentrantReadWriteLock lock = this.lock;
+            try {
+                synchronized (this) {
+                    lock.readLock().lock();
+                }
+                Bench.payload(Bench.PAYLOAD);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        protected synchronized void finalize() {
+            lock.writeLock().lock();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Mirrors {@link SafeFinalizeSyncStampedExample}: monitor guarded stamped read lock acquisition.
+     */
+    static final class Stamped implements Worker {
+        private final StampedLock lock = new StampedLock();
+
+        public void work() {
+            StampedLock lock = this.lock;
+            long stamp;
+            synchronized (this) {
+                stamp = lock.readLock();
+            }
+            try {
+                Bench.payload(Bench.PAYLOAD);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        protected synchronized void finalize() {
+            lock.unlockWrite(lock.writeLock());
+        }
+    }
+
+    /**
+     * Mirrors {@link SafeFinalizeVolatileFieldExample}: volatile increment.
+     */
+    static final class Volatile implements Worker {
+        static int STATIC_COUNTER = 0;
+
+        private volatile int counter = STATIC_COUNTER;
+
+        public void work() {
+            try {
+                Bench.payload(Bench.PAYLOAD);
+            } finally {
+                counter++;
+            }
+        }
+
+        protected void finalize() {
+            STATIC_COUNTER = counter;
+        }
+    }
+
+    /**
+     * Mirrors {@link SafeFinalizeVolatileFieldUsingUnsafeExample}: <code>putOrderedInt</code>.
+     */
+    static final class Ordered implements Worker {
+        static int STATIC_COUNTER = 0;
+        private static final Unsafe unsafe;
+        private static final long counterOffset;
+
+        volatile int counter = STATIC_COUNTER;
+
+        static {
+            try {
+                Field field = Unsafe.class.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = (Unsafe) field.get(null);
+                counterOffset = unsafe.objectFieldOffset(Ordered.class.getDeclaredField("counter"));
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            } catch (NoSuchFieldException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        public void work() {
+            try {
+                Bench.payload(Bench.PAYLOAD);
+            } finally {
+                unsafe.putOrderedInt(this, counterOffset, counter + 1);
+            }
+        }
+
+        protected void finalize() {
+            STATIC_COUNTER = counter;
+        }
+    }
+
+    /**
+     * Mirrors {@link SafeFinalizeVolatileFieldUsingUpdaterExample}: <code>lazySet</code>.
+     */
+    static final class LazySet implements Worker {
+        static int STATIC_COUNTER = 0;
+        private static final AtomicIntegerFieldUpdater<LazySet> updater =
+                AtomicIntegerFieldUpdater.newUpdater(LazySet.class, "counter");
+
+        private volatile int counter = STATIC_COUNTER;
+
+        public void work() {
+            try {
+                Bench.payload(Bench.PAYLOAD);
+            } finally {
+                updater.lazySet(this, counter + 1);
+            }
+        }
+
+        protected void finalize() {
+            STATIC_COUNTER = counter;
+        }
+    }
+
+    /**
+     * Mirrors {@link SafeFinalizeReachabilityFenceExample}: <code>Reference.reachabilityFence</code>.
+     */
+    static final class Fence implements Worker {
+        public void work() {
+            try {
+                Bench.payload(Bench.PAYLOAD);
+            } finally {
+                Reference.reachabilityFence(this);
+            }
+        }
+
+        protected void finalize() {
+        }
+    }
+
+    /**
+     * Mirrors {@link SafeFinalizeVarHandleExample}: <code>setRelease</code> of a plain read.
+     */
+    static final class Release implements Worker {
+        static int STATIC_COUNTER = 0;
+        private static final VarHandle COUNTER;
+
+        private int counter = STATIC_COUNTER;
+
+        static {
+            try {
+                COUNTER = MethodHandles.lookup().findVarHandle(Release.class, "counter", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        public void work() {
+            try {
+                Bench.payload(Bench.PAYLOAD);
+            } finally {
+                COUNTER.setRelease(this, counter + 1);
+            }
+        }
+
+        protected void finalize() {
+            STATIC_COUNTER = (int) COUNTER.getAcquire(this);
+        }
+    }
+
+    /**
+     * <code>setOpaque</code> of a plain read. Measured for comparison only, an opaque write does
+     * not order the preceding work and is not a safe technique on its own.
+     */
+    static final class Opaque implements Worker {
+        static int STATIC_COUNTER = 0;
+        private static final VarHandle COUNTER;
+
+        private int counter = STATIC_COUNTER;
+
+        static {
+            try {
+                COUNTER = MethodHandles.lookup().findVarHandle(Opaque.class, "counter", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        public void work() {
+            try {
+                Bench.payload(Bench.PAYLOAD);
+            } finally {
+                COUNTER.setOpaque(this, counter + 1);
+            }
+        }
+
+        protected void finalize() {
+            STATIC_COUNTER = (int) COUNTER.getOpaque(this);
+        }
+    }
+
+    static Bench.OpFactory factory(final Class<? extends Worker> type) throws Exception {
+        final Worker shared = type.getDeclaredConstructor().newInstance();
+        return new Bench.OpFactory() {
+            public Bench.Op create() throws Exception {
+                final Worker worker = SHARED ? shared : type.getDeclaredConstructor().newInstance();
+                return new Bench.Op() {
+                    public void invoke() throws Exception {
+                        worker.work();
+                    }
+                };
+            }
+        };
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("payload=" + Bench.PAYLOAD + " shared=" + SHARED);
+            Bench.printHeader();
+            for (String worker : WORKERS) {
+                Bench.fork(EpilogueBenchmark.class, worker);
+            }
+            return;
+        }
+
+        // Forked: measure a single technique at every thread count
+        Class<? extends Worker> worker =
+                Class.forName(EpilogueBenchmark.class.getName() + "$" + args[0]).asSubclass(Worker.class);
+        for (int threads : Bench.threadCounts()) {
+            Bench.print(Bench.run(worker.getSimpleName(), threads, factory(worker)));
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Compares <code>Reference.reachabilityFence</code> against the three field write techniques,
+ * per compiler.
+ *
+ * <p>Runs the relevant {@link EpilogueBenchmark} workers once with C1 only
+ * (<code>-XX:TieredStopAtLevel=1</code>) and once with C2 only
+ * (<code>-XX:-TieredCompilation</code>), so the barrier cost of the field writes can be told
+ * apart from the fence, which C2 compiles down to nothing but a live reference.</p>
+ *
+ * <pre>
+ * java -cp out -Dbench.threads=1 FenceBenchmark
+ * </pre>
+ */
+public final class FenceBenchmark {
+    private static final String[] WORKERS = {"Broken", "Fence", "Volatile", "Ordered", "LazySet"};
+
+    private static final String[][] COMPILERS = {
+            {"-XX:TieredStopAtLevel=1"},
+            {"-XX:-TieredCompilation"}
+    };
+
+    public static void main(String[] args) throws Exception {
+        for (String[] compiler : COMPILERS) {
+            System.out.println("payload=" + Bench.PAYLOAD + " compiler=" + compiler[0]);
+            Bench.printHeader();
+            for (String worker : WORKERS) {
+                Bench.forkWith(compiler, EpilogueBenchmark.class, worker);
+            }
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Checks how much the JVM finalizer thread allocates per finalized
+ * {@link SafeFinalizeSyncRWInstrumentedExample}.
+ *
+ * <p>A batch of instances is left to the finalizer, and the bytes allocated by the finalizer thread
+ * meanwhile are read from <code>com.sun.management.ThreadMXBean</code>. Every mode runs in its own
+ * JVM, once with the cleanup tasks allocated in <code>finalize()</code> and once with
+ * <code>-Dreaper.preallocate=true</code>, where they are created with the object and scheduled
+ * through the intrusive queue of {@link CleanupScheduler}. The first rounds warm up, the last one
+ * is reported. The check fails if a preallocated finalization allocates anything.</p>
+ *
+ * <p>Leak reports are disabled, since printing a sampled allocation site allocates. Flight recorder
+ * events are only allocated while they are recorded, so no recording must be running.</p>
+ *
+ * <ul>
+ *   <li><code>bench.instances</code> - instances per round (default 100000)</li>
+ *   <li><code>bench.rounds</code> - rounds (default 5)</li>
+ * </ul>
+ *
+ * <pre>
+ * java -cp out FinalizerAllocationCheck
+ * </pre>
+ */
+public final class FinalizerAllocationCheck {
+    private static final int INSTANCES = Integer.getInteger("bench.instances", 100000);
+    private static final int ROUNDS = Integer.getInteger("bench.rounds", 5);
+
+    static Thread finalizerThread() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("Finalizer")) {
+                return thread;
+            }
+        }
+        throw new IllegalStateException("No finalizer thread");
+    }
+
+    static void run() throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName stats = new ObjectName("finalize.examples:type=GuardedObjectStats,name="
+                + SafeFinalizeSyncRWInstrumentedExample.class.getName());
+        long finalizer = finalizerThread().getId();
+
+        double bytesPerObject = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < INSTANCES; i++) {
+                new SafeFinalizeSyncRWInstrumentedExample();
+            }
+            long target = (Long) server.getAttribute(stats, "Created");
+            long before = threads.getThreadAllocatedBytes(finalizer);
+            while ((Long) server.getAttribute(stats, "Finalized") < target) {
+                System.gc();
+                Thread.sleep(10);
+            }
+            long allocated = threads.getThreadAllocatedBytes(finalizer) - before;
+            bytesPerObject = (double) allocated / INSTANCES;
+        }
+        System.out.printf("%-12s %16.2f%n", Boolean.getBoolean("reaper.preallocate") ? "preallocate" : "allocate",
+                bytesPerObject);
+        if (Boolean.getBoolean("reaper.preallocate") && bytesPerObject > 0) {
+            System.out.println("FAIL: the finalizer thread allocated while finalizing preallocated instances");
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1) {
+            run();
+            return;
+        }
+        System.out.printf("%-12s %16s%n", "Mode", "Bytes/finalize");
+        Bench.forkWith(new String[] {"-Dleak.level=DISABLED"}, FinalizerAllocationCheck.class, "run");
+        Bench.forkWith(new String[] {"-Dleak.level=DISABLED", "-Dreaper.preallocate=true"},
+                FinalizerAllocationCheck.class, "run");
+    }
+}
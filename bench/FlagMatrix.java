@@ -0,0 +1,139 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs {@link PrematureFinalizationStress} for every subject under every combination of JIT flags
+ * and garbage collector, forking the JVMs in parallel.
+ *
+ * <p>The JIT flag sets are those listed in {@link BrokenFinalizeExample}, plus the defaults. The
+ * collectors are Serial, Parallel, G1, ZGC and Shenandoah; a collector the JVM does not support is
+ * reported as skipped. The result is a table with the verdict and timing of every combination, and
+ * the runner exits with a non-zero status if any safe technique was finalized prematurely.</p>
+ *
+ * <ul>
+ *   <li><code>matrix.parallelism</code> - number of JVMs running at once (default available
+ *   processors)</li>
+ *   <li><code>matrix.cycles</code> - work calls per JVM (default 500000)</li>
+ * </ul>
+ *
+ * <p>Do not pass a collector option to the runner itself, since it is inherited by the forked
+ * JVMs.</p>
+ *
+ * <pre>
+ * java -cp out FlagMatrix
+ * java -cp out FlagMatrix Broken Fence
+ * </pre>
+ */
+public final class FlagMatrix {
+    private static final int PARALLELISM =
+            Integer.getInteger("matrix.parallelism", Runtime.getRuntime().availableProcessors());
+    private static final int CYCLES = Integer.getInteger("matrix.cycles", 500000);
+
+    static final String[][] JIT_FLAGS = {
+            {},
+            {"-Xcomp", "-XX:+TieredCompilation"},
+            {"-XX:-TieredCompilation", "-XX:CompileThreshold=1"}
+    };
+
+    static final String[] COLLECTORS = {"Serial", "Parallel", "G1", "Z", "Shenandoah"};
+
+    private static class Cell {
+        final String subject;
+        final String[] jit;
+        final String collector;
+
+        Cell(String subject, String[] jit, String collector) {
+            this.subject = subject;
+            this.jit = jit;
+            this.collector = collector;
+        }
+
+        String[] jvmArgs() {
+            List<String> args = new ArrayList<String>();
+            for (String arg : PrematureFinalizationStress.JVM_ARGS) {
+                args.add(arg);
+            }
+            args.add("-XX:+Use" + collector + "GC");
+            for (String arg : jit) {
+                args.add(arg);
+            }
+            args.add("-Dstress.cycles=" + CYCLES);
+            return args.toArray(new String[args.size()]);
+        }
+
+        String flags() {
+            return jit.length == 0 ? "default" : String.join(" ", jit);
+        }
+    }
+
+    static boolean supported(String collector) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-XX:+Use" + collector + "GC", "-version")
+                .redirectErrorStream(true).start();
+        process.getInputStream().readAllBytes();
+        return process.waitFor() == 0;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] subjects = args.length > 0 ? args : PrematureFinalizationStress.SUBJECTS;
+
+        List<String> collectors = new ArrayList<String>();
+        for (String collector : COLLECTORS) {
+            if (supported(collector)) {
+                collectors.add(collector);
+            } else {
+                System.out.println("Skipping " + collector + "GC, not supported by this JVM");
+            }
+        }
+
+        List<Cell> cells = new ArrayList<Cell>();
+        for (String subject : subjects) {
+            for (String[] jit : JIT_FLAGS) {
+                for (String collector : collectors) {
+                    cells.add(new Cell(subject, jit, collector));
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        ExecutorService forks = Executors.newFixedThreadPool(PARALLELISM);
+        List<Future<String>> outputs = new ArrayList<Future<String>>();
+        for (final Cell cell : cells) {
+            outputs.add(forks.submit(() -> Bench.forkCapture(cell.jvmArgs(), PrematureFinalizationStress.class,
+                    "run", cell.subject)));
+        }
+
+        boolean failed = false;
+        System.out.printf("%-10s %-45s %-12s %10s %10s %8s %10s%n",
+                "Subject", "JIT flags", "GC", "Finalized", "Premature", "ms", "Verdict");
+        for (int i = 0; i < cells.size(); i++) {
+            Cell cell = cells.get(i);
+            String[] result;
+            try {
+                result = PrematureFinalizationStress.parse(outputs.get(i).get());
+            } catch (Exception e) {
+                result = null;
+            }
+            if (result == null) {
+                failed = true;
+                System.out.printf("%-10s %-45s %-12s %10s %10s %8s %10s%n",
+                        cell.subject, cell.flags(), cell.collector, "-", "-", "-", "ERROR");
+                continue;
+            }
+            long premature = Long.parseLong(result[4]);
+            failed |= !PrematureFinalizationStress.passed(cell.subject, premature);
+            System.out.printf("%-10s %-45s %-12s %10s %10d %8s %10s%n", cell.subject, cell.flags(), cell.collector,
+                    result[3], premature, result[5], PrematureFinalizationStress.verdict(cell.subject, premature));
+        }
+        forks.shutdown();
+
+        System.out.printf("%d JVMs in %.1f s%n", cells.size(), (System.nanoTime() - start) / 1e9);
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Checks that {@link ReachabilityGuard} costs the same as the hand-written epilogues.
+ *
+ * <p>For every strategy, the guarded worker is measured next to the {@link EpilogueBenchmark}
+ * worker it was extracted from, each in its own JVM. The guard field is declared with the
+ * abstract <code>ReachabilityGuard</code> type, as in typical use, so the guard calls are only
+ * inlined through the type profile.</p>
+ *
+ * <p>In addition, each guarded worker is run once with <code>-XX:+PrintInlining</code>, and the
+ * C2 inlining decisions for <code>enter()</code> and <code>exit()</code> are reported. A strategy
+ * passes when both were inlined, in which case the compiled code is the same as the hand-written
+ * version. Dumping the machine code itself requires the hsdis plugin; to compare it directly run
+ * with <code>-XX:+UnlockDiagnosticVMOptions -XX:+PrintAssembly</code>.</p>
+ *
+ * <pre>
+ * java -cp out -Dbench.threads=1 GuardBenchmark
+ * </pre>
+ */
+public final class GuardBenchmark {
+    private static final String[][] PAIRS = {
+            {"MONITOR_EXIT", "MonitorExit"},
+            {"READ_WRITE", "ReadWrite"},
+            {"VOLATILE", "Volatile"},
+            {"ORDERED", "Release"},
+            {"FENCE", "Fence"}
+    };
+
+    private static final String[] PRINT_INLINING = {
+            "-XX:+UnlockDiagnosticVMOptions", "-XX:+PrintInlining", "-Dbench.threads=1"
+    };
+
+    static final class Guarded implements EpilogueBenchmark.Worker {
+        private final ReachabilityGuard guard;
+
+        Guarded(ReachabilityGuard.Strategy strategy) {
+            guard = strategy.create(new CleanupTask());
+        }
+
+        public void work() {
+            ReachabilityGuard guard = this.guard;
+            guard.enter();
+            try {
+                Bench.payload(Bench.PAYLOAD);
+            } finally {
+                guard.exit();
+            }
+        }
+    }
+
+    private static class CleanupTask implements Runnable {
+        public void run() {
+        }
+    }
+
+    static Bench.OpFactory factory(final ReachabilityGuard.Strategy strategy) {
+        return new Bench.OpFactory() {
+            public Bench.Op create() {
+                final Guarded guarded = new Guarded(strategy);
+                return new Bench.Op() {
+                    public void invoke() {
+                        guarded.work();
+                    }
+                };
+            }
+        };
+    }
+
+    static String inlining(String strategy) throws Exception {
+        String output = Bench.forkCapture(PRINT_INLINING, GuardBenchmark.class, strategy);
+        boolean enter = false, exit = false;
+        for (String line : output.split("\n")) {
+            if (line.contains("ReachabilityGuard") && line.contains("inline (hot)")) {
+                enter |= line.contains("::enter");
+                exit |= line.contains("::exit");
+            }
+        }
+        return enter && exit ? "inlined" : "NOT INLINED (enter=" + enter + ", exit=" + exit + ")";
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1) {
+            ReachabilityGuard.Strategy strategy = ReachabilityGuard.Strategy.valueOf(args[0]);
+            for (int threads : Bench.threadCounts()) {
+                Bench.print(Bench.run("Guard." + strategy, threads, factory(strategy)));
+            }
+            return;
+        }
+
+        System.out.println("payload=" + Bench.PAYLOAD);
+        Bench.printHeader();
+        for (String[] pair : PAIRS) {
+            Bench.fork(EpilogueBenchmark.class, pair[1]);
+            Bench.fork(GuardBenchmark.class, pair[0]);
+        }
+        System.out.println();
+        for (String[] pair : PAIRS) {
+            System.out.printf("%-40s %s%n", "Guard." + pair[0], inlining(pair[0]));
+        }
+    }
+}
@@ -0,0 +1,229 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Measures cleanup throughput of {@link SafeFinalizeSyncRWExample} against
+ * {@link SafeFinalizeSyncRWHandoffExample} when some instances are still being read.
+ *
+ * <p>A large number of instances is finalized at once, while a few of them are in the middle of a
+ * long running work call. Work calls are simulated as compiled code would execute them: the read
+ * lock is acquired under the monitor, after which the instance is no longer referenced. The time
+ * until all idle instances have been cleaned shows whether the busy ones stall the reaper.</p>
+ *
+ * <ul>
+ *   <li><code>bench.instances</code> - number of finalized instances (default 10000)</li>
+ *   <li><code>bench.busy</code> - how many of them have a work call in progress (default 4)</li>
+ *   <li><code>bench.busyMillis</code> - duration of those work calls (default 2000)</li>
+ * </ul>
+ *
+ * <pre>
+ * java -cp out HandoffBenchmark
+ * </pre>
+ */
+public final class HandoffBenchmark {
+    private static final int INSTANCES = Integer.getInteger("bench.instances", 10000);
+    private static final int BUSY = Integer.getInteger("bench.busy", 4);
+    private static final long BUSY_MILLIS = Long.getLong("bench.busyMillis", 2000L);
+
+    private static final ExecutorService REAPER = Executors.newFixedThreadPool(2);
+
+    static final AtomicInteger cleaned = new AtomicInteger();
+
+    /**
+     * A work call in progress, released once the work is complete.
+     */
+    interface Reader {
+        void release();
+    }
+
+    interface Guarded {
+        Reader acquire();
+    }
+
+    /**
+     * Mirrors {@link SafeFinalizeSyncRWExample}.
+     */
+    static final class Blocking implements Guarded {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        public Reader acquire() {
+            ReentrantReadWriteLock lock = this.lock;
+            synchronized (this) {
+                lock.readLock().lock();
+            }
+            return new BlockingReader(lock);
+        }
+
+        // Not an anonymous class, which would keep the instance reachable
+        private static class BlockingReader implements Reader {
+            private final ReentrantReadWriteLock lock;
+
+            BlockingReader(ReentrantReadWriteLock lock) {
+                this.lock = lock;
+            }
+
+            public void release() {
+                lock.readLock().unlock();
+            }
+        }
+
+        private static class CleanupTask implements Runnable {
+            private final ReentrantReadWriteLock lock;
+
+            CleanupTask(ReentrantReadWriteLock lock) {
+                this.lock = lock;
+            }
+
+            public void run() {
+                try {
+                    lock.writeLock().lock();
+                    cleaned.incrementAndGet();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+
+        protected synchronized void finalize() {
+            REAPER.execute(new CleanupTask(lock));
+        }
+    }
+
+    /**
+     * Mirrors {@link SafeFinalizeSyncRWHandoffExample}.
+     */
+    static final class Handoff implements Guarded {
+        private final Cleanup cleanup = new Cleanup();
+
+        public Reader acquire() {
+            Cleanup cleanup = this.cleanup;
+            synchronized (this) {
+                cleanup.readers.incrementAndGet();
+                cleanup.lock.readLock().lock();
+            }
+            return new HandoffReader(cleanup);
+        }
+
+        // Not an anonymous class, which would keep the instance reachable
+        private static class HandoffReader implements Reader {
+            private final Cleanup cleanup;
+
+            HandoffReader(Cleanup cleanup) {
+                this.cleanup = cleanup;
+            }
+
+            public void release() {
+                cleanup.lock.readLock().unlock();
+                if (cleanup.readers.decrementAndGet() == 0 && cleanup.pending) {
+                    REAPER.execute(cleanup);
+                }
+            }
+        }
+
+        private static class Cleanup implements Runnable {
+            final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+            final AtomicInteger readers = new AtomicInteger();
+            volatile boolean pending;
+            private final AtomicBoolean done = new AtomicBoolean();
+
+            public void run() {
+                pending = true;
+                if (lock.writeLock().tryLock()) {
+                    try {
+                        if (done.compareAndSet(false, true)) {
+                            cleaned.incrementAndGet();
+                        }
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                }
+            }
+        }
+
+        protected synchronized void finalize() {
+            REAPER.execute(cleanup);
+        }
+    }
+
+    static class SimulateStackCall implements Runnable {
+        private Guarded guarded;
+        private final CountDownLatch acquired;
+
+        SimulateStackCall(Guarded guarded, CountDownLatch acquired) {
+            this.guarded = guarded;
+            this.acquired = acquired;
+        }
+
+        public void run() {
+            // Ensure the object is not reachable once the read lock is held
+            Reader reader = guarded.acquire();
+            guarded = null;
+            acquired.countDown();
+            try {
+                Thread.sleep(BUSY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                reader.release();
+            }
+        }
+    }
+
+    static Guarded create(String mode) {
+        return mode.equals("Handoff") ? new Handoff() : new Blocking();
+    }
+
+    static void run(String mode) throws Exception {
+        Guarded[] guarded = new Guarded[INSTANCES];
+        for (int i = 0; i < INSTANCES; i++) {
+            guarded[i] = create(mode);
+        }
+
+        // Start the long running work calls, dropping the instance once the read lock is held.
+        // Busy instances are spread out, so they are not all finalized last.
+        CountDownLatch acquired = new CountDownLatch(BUSY);
+        for (int i = 0; i < BUSY; i++) {
+            int index = (int) ((2L * i + 1) * INSTANCES / (2 * BUSY));
+            Thread worker = new Thread(new SimulateStackCall(guarded[index], acquired));
+            worker.setDaemon(true);
+            worker.start();
+        }
+        acquired.await();
+
+        guarded = null;
+        long start = System.nanoTime();
+        long idleDone = 0;
+        while (cleaned.get() < INSTANCES) {
+            System.gc();
+            Thread.sleep(1);
+            if (idleDone == 0 && cleaned.get() >= INSTANCES - BUSY) {
+                idleDone = System.nanoTime();
+            }
+        }
+        long allDone = System.nanoTime();
+        if (idleDone == 0) {
+            idleDone = allDone;
+        }
+
+        double idleMillis = (idleDone - start) / 1e6;
+        System.out.printf("%-10s %8d %6d %14.1f %14.0f %14.1f%n", mode, INSTANCES, BUSY,
+                idleMillis, (INSTANCES - BUSY) / (idleMillis / 1e3), (allDone - start) / 1e6);
+        REAPER.shutdown();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1) {
+            run(args[0]);
+            return;
+        }
+
+        System.out.printf("%-10s %8s %6s %14s %14s %14s%n",
+                "Mode", "Objects", "Busy", "idle ms", "idle clean/s", "all ms");
+        Bench.fork(HandoffBenchmark.class, "Blocking");
+        Bench.fork(HandoffBenchmark.class, "Handoff");
+    }
+}
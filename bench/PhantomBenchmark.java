@@ -0,0 +1,146 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Compares {@link SafePhantomSyncRWExample} against the finalizer based
+ * {@link SafeFinalizeSyncRWInstrumentedExample} with a million dropped instances.
+ *
+ * <p>Each round allocates the instances, drops them and forces GCs every few milliseconds until
+ * every cleanup has run and a sample of the instances has been reclaimed. Reclamation is observed
+ * through independent <code>PhantomReference</code>s to one in a thousand instances. Reported are
+ * the time until the last cleanup and the resulting throughput, the time until the last sampled
+ * instance was reclaimed, the number of GCs needed, and the reference processing time those GCs
+ * spent, summed from <code>-Xlog:gc+phases+ref=debug</code>. Each variant runs in its own JVM, and
+ * the last of several rounds is reported.</p>
+ *
+ * <p>The messages of the examples are discarded before they are encoded.</p>
+ *
+ * <ul>
+ *   <li><code>bench.instances</code> - instances per round (default 1000000)</li>
+ *   <li><code>bench.rounds</code> - rounds (default 3)</li>
+ * </ul>
+ *
+ * <pre>
+ * java -cp out PhantomBenchmark
+ * </pre>
+ */
+public final class PhantomBenchmark {
+    private static final int INSTANCES = Integer.getInteger("bench.instances", 1000000);
+    private static final int ROUNDS = Integer.getInteger("bench.rounds", 3);
+    private static final int SAMPLE_EVERY = 1000;
+
+    static final String[] VARIANTS = {"finalize", "phantom"};
+
+    private static final Pattern REFERENCE_PROCESSING = Pattern.compile("Reference Processing: ([0-9.]+)ms");
+
+    static Object create(String variant) {
+        return variant.equals("phantom")
+                ? new SafePhantomSyncRWExample() : new SafeFinalizeSyncRWInstrumentedExample();
+    }
+
+    static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += gc.getCollectionCount();
+        }
+        return count;
+    }
+
+    /**
+     * Sums the reference processing times logged after the given offset.
+     */
+    static double referenceProcessingMillis(File log, long offset) throws IOException {
+        double millis = 0;
+        RandomAccessFile file = new RandomAccessFile(log, "r");
+        try {
+            file.seek(offset);
+            String line;
+            while ((line = file.readLine()) != null) {
+                Matcher matcher = REFERENCE_PROCESSING.matcher(line);
+                if (matcher.find()) {
+                    millis += Double.parseDouble(matcher.group(1));
+                }
+            }
+        } finally {
+            file.close();
+        }
+        return millis;
+    }
+
+    static void run(String variant, File log) throws Exception {
+        Bench.silenceStderr();
+        Class<?> type = create(variant).getClass();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName stats = new ObjectName("finalize.examples:type=GuardedObjectStats,name=" + type.getName());
+
+        String result = null;
+        for (int round = 0; round < ROUNDS; round++) {
+            ReferenceQueue<Object> reclaimed = new ReferenceQueue<Object>();
+            PhantomReference<?>[] samples = new PhantomReference<?>[INSTANCES / SAMPLE_EVERY];
+            for (int i = 0; i < INSTANCES; i++) {
+                Object instance = create(variant);
+                if (i % SAMPLE_EVERY == 0) {
+                    samples[i / SAMPLE_EVERY] = new PhantomReference<Object>(instance, reclaimed);
+                }
+            }
+            long target = (Long) server.getAttribute(stats, "Created");
+            long logOffset = log.length();
+            long gcs = gcCount();
+
+            long start = System.nanoTime();
+            long cleanedAt = 0;
+            long reclaimedAt = 0;
+            int reclaimedSamples = 0;
+            long lastGc = 0;
+            while (cleanedAt == 0 || reclaimedAt == 0) {
+                long now = System.nanoTime();
+                if (now - lastGc > 10000000L) {
+                    System.gc();
+                    lastGc = System.nanoTime();
+                }
+                while (reclaimed.poll() != null) {
+                    reclaimedSamples++;
+                }
+                now = System.nanoTime();
+                if (reclaimedAt == 0 && reclaimedSamples == samples.length) {
+                    reclaimedAt = now;
+                }
+                if (cleanedAt == 0 && (Long) server.getAttribute(stats, "Cleaned") >= target) {
+                    cleanedAt = now;
+                }
+                Thread.sleep(1);
+            }
+            gcs = gcCount() - gcs;
+            result = String.format("%-9s %11.1f %12.0f %11.1f %5d %11.1f", variant,
+                    (cleanedAt - start) / 1e6, INSTANCES / ((cleanedAt - start) / 1e9),
+                    (reclaimedAt - start) / 1e6, gcs, referenceProcessingMillis(log, logOffset));
+        }
+        System.out.println(result);
+        System.exit(0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2) {
+            run(args[0], new File(args[1]));
+            return;
+        }
+        System.out.printf("%-9s %11s %12s %11s %5s %11s%n",
+                "Variant", "Cleaned ms", "Cleanups/s", "Reclaim ms", "GCs", "Ref proc ms");
+        for (String variant : VARIANTS) {
+            File log = File.createTempFile(variant, ".log");
+            log.deleteOnExit();
+            Bench.forkWith(new String[] {"-Xmx2g", "-Dleak.level=DISABLED",
+                    "-Xlog:gc+phases+ref=debug:file=" + log.getAbsolutePath()},
+                    PhantomBenchmark.class, variant, log.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,466 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+import sun.misc.Unsafe;
+
+/**
+ * A self-verifying stress test for premature finalization.
+ *
+ * <p>Instead of one ten second work call with a forced GC, every technique is run through millions
+ * of short work calls. Each work call allocates enough garbage to trigger frequent young
+ * collections, and records its start and completion in memory. A finalizer that runs on an object
+ * whose work has started but not completed is premature, and is counted. Since the bug only shows
+ * up once the work method has been compiled, the large number of calls also takes care of JIT
+ * warm-up.</p>
+ *
+ * <p>The unprotected {@link Broken} subject is expected to be finalized prematurely, at least on
+ * HotSpot once C2 has compiled it. Every other subject must never be, and the harness exits with a
+ * non-zero status if one was.</p>
+ *
+ * <ul>
+ *   <li><code>stress.cycles</code> - work calls per subject (default 2000000)</li>
+ *   <li><code>stress.threads</code> - threads issuing work calls (default 2)</li>
+ *   <li><code>stress.garbage</code> - bytes allocated inside each work call (default 2048)</li>
+ *   <li><code>stress.payload</code> - CPU tokens burnt after allocating, widening the window in
+ *   which a finalizer can run (default 200)</li>
+ * </ul>
+ *
+ * <p>Each subject runs in its own JVM with a small young generation. Pass subject names to run only
+ * those.</p>
+ *
+ * <pre>
+ * java -cp out PrematureFinalizationStress
+ * java -cp out PrematureFinalizationStress Broken Volatile
+ * </pre>
+ */
+public final class PrematureFinalizationStress {
+    static final String[] SUBJECTS = {
+            "Broken", "Monitor", "Unpinned", "ReadWrite", "Stamped", "Volatile", "Ordered", "LazySet", "Release", "Fence"
+    };
+
+    static final int CYCLES = Integer.getInteger("stress.cycles", 2000000);
+    static final int THREADS = Integer.getInteger("stress.threads", 2);
+    static final int GARBAGE = Integer.getInteger("stress.garbage", 2048);
+    static final long PAYLOAD = Long.getLong("stress.payload", 200L);
+
+    /**
+     * JVM options for each forked subject, keeping young collections frequent.
+     */
+    static final String[] JVM_ARGS = {"-Xmx256m", "-Xmn8m"};
+
+    /**
+     * Finalizable objects that have not been finalized yet are capped, so that a slow finalizer
+     * thread can not run the test out of memory.
+     */
+    private static final int MAX_PENDING = 100000;
+
+    private static final int STARTED = 1;
+    private static final int COMPLETED = 2;
+
+    static final AtomicIntegerArray state = new AtomicIntegerArray(CYCLES);
+    static final AtomicLong finalized = new AtomicLong();
+    static final AtomicLong premature = new AtomicLong();
+
+    static volatile byte[] GARBAGE_SINK;
+
+    /**
+     * The work call body, shared by every subject. It only depends on the id, not on the subject,
+     * so nothing but the technique of the subject keeps the subject reachable.
+     */
+    static void body(int id) {
+        state.set(id, STARTED);
+        GARBAGE_SINK = new byte[GARBAGE];
+        Bench.payload(PAYLOAD);
+        state.set(id, COMPLETED);
+    }
+
+    static void finalized(int id) {
+        if (state.get(id) == STARTED) {
+            premature.incrementAndGet();
+        }
+        finalized.incrementAndGet();
+    }
+
+    abstract static class Subject {
+        final int id;
+
+        Subject(int id) {
+            this.id = id;
+        }
+
+        abstract void work();
+    }
+
+    static final class Broken extends Subject {
+        Broken(int id) {
+            super(id);
+        }
+
+        void work() {
+            body(id);
+        }
+
+        protected void finalize() {
+            finalized(id);
+        }
+    }
+
+    static final class Monitor extends Subject {
+        Monitor(int id) {
+            super(id);
+        }
+
+        synchronized void work() {
+            body(id);
+        }
+
+        protected synchronized void finalize() {
+            finalized(id);
+        }
+    }
+
+    static final class Unpinned extends Subject {
+        private final ReentrantLock lock = new ReentrantLock();
+
+        Unpinned(int id) {
+            super(id);
+        }
+
+        void work() {
+            int id = this.id;
+            ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                body(id);
+            } finally {
+                synchronized (this) {
+                    lock.unlock();
+                }
+            }
+        }
+
+        protected synchronized void finalize() {
+            finalized(id);
+        }
+    }
+
+    static final class ReadWrite extends Subject {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        ReadWrite(int id) {
+            super(id);
+        }
+
+        void work() {
+            int id = this.id;
+            ReentrantReadWriteLock lock = this.lock;
+            try {
+                synchronized (this) {
+                    lock.readLock().lock();
+                }
+                body(id);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        // Not handed off to a reaper, the write lock is sufficient to detect premature finalization
+        protected synchronized void finalize() {
+            lock.writeLock().lock();
+            try {
+                finalized(id);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    static final class Stamped extends Subject {
+        private final StampedLock lock = new StampedLock();
+
+        Stamped(int id) {
+            super(id);
+        }
+
+        void work() {
+            int id = this.id;
+            StampedLock lock = this.lock;
+            long stamp;
+            synchronized (this) {
+                stamp = lock.readLock();
+            }
+            try {
+                body(id);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        protected synchronized void finalize() {
+            long stamp = lock.writeLock();
+            try {
+                finalized(id);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    static final class Volatile extends Subject {
+        static int STATIC_COUNTER = 0;
+
+        private volatile int counter = STATIC_COUNTER;
+
+        Volatile(int id) {
+            super(id);
+        }
+
+        void work() {
+            try {
+                body(id);
+            } finally {
+                counter++;
+            }
+        }
+
+        protected void finalize() {
+            STATIC_COUNTER = counter;
+            finalized(id);
+        }
+    }
+
+    static final class Ordered extends Subject {
+        static int STATIC_COUNTER = 0;
+        private static final Unsafe unsafe;
+        private static final long counterOffset;
+
+        volatile int counter = STATIC_COUNTER;
+
+        static {
+            try {
+                Field field = Unsafe.class.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = (Unsafe) field.get(null);
+                counterOffset = unsafe.objectFieldOffset(Ordered.class.getDeclaredField("counter"));
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            } catch (NoSuchFieldException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        Ordered(int id) {
+            super(id);
+        }
+
+        void work() {
+            try {
+                body(id);
+            } finally {
+                unsafe.putOrderedInt(this, counterOffset, counter + 1);
+            }
+        }
+
+        protected void finalize() {
+            STATIC_COUNTER = counter;
+            finalized(id);
+        }
+    }
+
+    static final class LazySet extends Subject {
+        static int STATIC_COUNTER = 0;
+        private static final AtomicIntegerFieldUpdater<LazySet> updater =
+                AtomicIntegerFieldUpdater.newUpdater(LazySet.class, "counter");
+
+        private volatile int counter = STATIC_COUNTER;
+
+        LazySet(int id) {
+            super(id);
+        }
+
+        void work() {
+            try {
+                body(id);
+            } finally {
+                updater.lazySet(this, counter + 1);
+            }
+        }
+
+        protected void finalize() {
+            STATIC_COUNTER = counter;
+            finalized(id);
+        }
+    }
+
+    static final class Release extends Subject {
+        static int STATIC_COUNTER = 0;
+        private static final VarHandle COUNTER;
+
+        private int counter = STATIC_COUNTER;
+
+        static {
+            try {
+                COUNTER = MethodHandles.lookup().findVarHandle(Release.class, "counter", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        Release(int id) {
+            super(id);
+        }
+
+        void work() {
+            try {
+                body(id);
+            } finally {
+                COUNTER.setRelease(this, counter + 1);
+            }
+        }
+
+        protected void finalize() {
+            STATIC_COUNTER = (int) COUNTER.getAcquire(this);
+            finalized(id);
+        }
+    }
+
+    static final class Fence extends Subject {
+        Fence(int id) {
+            super(id);
+        }
+
+        void work() {
+            try {
+                body(id);
+            } finally {
+                Reference.reachabilityFence(this);
+            }
+        }
+
+        protected void finalize() {
+            finalized(id);
+        }
+    }
+
+    static Subject create(String subject, int id) {
+        switch (subject) {
+            case "Broken": return new Broken(id);
+            case "Monitor": return new Monitor(id);
+            case "Unpinned": return new Unpinned(id);
+            case "ReadWrite": return new ReadWrite(id);
+            case "Stamped": return new Stamped(id);
+            case "Volatile": return new Volatile(id);
+            case "Ordered": return new Ordered(id);
+            case "LazySet": return new LazySet(id);
+            case "Release": return new Release(id);
+            case "Fence": return new Fence(id);
+            default: throw new IllegalArgumentException(subject);
+        }
+    }
+
+    private static class Caller implements Runnable {
+        private final String subject;
+        private final int first;
+        private final int step;
+
+        Caller(String subject, int first, int step) {
+            this.subject = subject;
+            this.first = first;
+            this.step = step;
+        }
+
+        public void run() {
+            for (int id = first; id < CYCLES; id += step) {
+                while (id - finalized.get() > MAX_PENDING) {
+                    Thread.yield();
+                }
+                create(subject, id).work();
+            }
+        }
+    }
+
+    /**
+     * Runs the given subject in this JVM, printing a single result line.
+     */
+    static void run(String subject) throws Exception {
+        long start = System.nanoTime();
+        List<Thread> callers = new ArrayList<Thread>();
+        for (int i = 0; i < THREADS; i++) {
+            Thread caller = new Thread(new Caller(subject, i, THREADS), subject + "-" + i);
+            callers.add(caller);
+            caller.start();
+        }
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(result(subject, CYCLES, finalized.get(), premature.get(), elapsed / 1000000));
+    }
+
+    static String result(String subject, long cycles, long finalized, long premature, long millis) {
+        return String.format("RESULT %s %d %d %d %d", subject, cycles, finalized, premature, millis);
+    }
+
+    /**
+     * Parses a result line from the output of a forked JVM, returning null if there is none.
+     * The fields are subject, cycles, finalized, premature and milliseconds.
+     */
+    static String[] parse(String output) {
+        for (String line : output.split("\n")) {
+            if (line.startsWith("RESULT ")) {
+                return line.trim().split(" ");
+            }
+        }
+        return null;
+    }
+
+    static boolean passed(String subject, long premature) {
+        return premature == 0 || subject.equals("Broken");
+    }
+
+    /**
+     * For the broken subject reports whether the bug was reproduced, for all others whether the
+     * technique held up.
+     */
+    static String verdict(String subject, long premature) {
+        if (subject.equals("Broken")) {
+            return premature > 0 ? "REPRO" : "NO-REPRO";
+        }
+        return premature == 0 ? "PASS" : "FAIL";
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("run")) {
+            run(args[1]);
+            return;
+        }
+
+        String[] subjects = args.length > 0 ? args : SUBJECTS;
+        boolean failed = false;
+        System.out.printf("%-10s %10s %10s %10s %12s %10s %8s%n",
+                "Subject", "Cycles", "Finalized", "Premature", "Rate", "ms", "Verdict");
+        for (String subject : subjects) {
+            String[] result = parse(Bench.forkCapture(JVM_ARGS, PrematureFinalizationStress.class, "run", subject));
+            long cycles = Long.parseLong(result[2]);
+            long premature = Long.parseLong(result[4]);
+            boolean passed = passed(subject, premature);
+            failed |= !passed;
+            System.out.printf("%-10s %10d %10s %10d %12.2e %10s %8s%n", subject, cycles, result[3], premature,
+                    (double) premature / cycles, result[5], verdict(subject, premature));
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/**
+ * Read-side scaling of the read/write handshake, <code>ReentrantReadWriteLock</code> against
+ * <code>StampedLock</code>.
+ *
+ * <p>All threads call the work method of one shared instance, as with a guarded object shared
+ * between threads, for 1 to 64 threads. Both techniques acquire the read lock under the monitor
+ * of the instance, so the curve includes that cost, which the finalization ordering requires.
+ * The thread counts can be overridden with <code>-Dbench.scaling=...</code>.</p>
+ *
+ * <pre>
+ * java -cp out ReadScalingBenchmark
+ * </pre>
+ */
+public final class ReadScalingBenchmark {
+    private static final String THREADS = System.getProperty("bench.scaling", "1,2,4,8,16,32,64");
+
+    private static final String[] WORKERS = {"ReadWrite", "Stamped"};
+
+    public static void main(String[] args) throws Exception {
+        String[] jvmArgs = {"-Dbench.shared=true", "-Dbench.threads=" + THREADS};
+        System.out.println("payload=" + Bench.PAYLOAD + " shared=true");
+        Bench.printHeader();
+        for (String worker : WORKERS) {
+            Bench.forkWith(jvmArgs, EpilogueBenchmark.class, worker);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures how the original fixed reaper pool and the {@link CleanupExecutor} absorb a burst of
+ * cleanups.
+ *
+ * <p>A single thread, standing in for the finalizer thread, hands a burst of cleanup tasks to each
+ * reaper. Most of them are trivial, but some wait as long as a cleanup of
+ * {@link SafeFinalizeSyncRWExample} waits for a long work call to release the read lock. The time
+ * until the burst is submitted shows how long finalization was held up, the time until it is
+ * drained shows the cleanup latency, and the peak pool size and the queue high water mark show
+ * the cost. The adaptive executor is run with both overflow policies.</p>
+ *
+ * <ul>
+ *   <li><code>bench.cleanups</code> - size of the burst (default 20000)</li>
+ *   <li><code>bench.slowEvery</code> - one in how many cleanups is slow (default 100)</li>
+ *   <li><code>bench.slowMillis</code> - duration of a slow cleanup (default 200)</li>
+ * </ul>
+ *
+ * <pre>
+ * java -cp out ReaperBenchmark
+ * </pre>
+ */
+public final class ReaperBenchmark {
+    private static final int CLEANUPS = Integer.getInteger("bench.cleanups", 20000);
+    private static final int SLOW_EVERY = Integer.getInteger("bench.slowEvery", 100);
+    private static final long SLOW_MILLIS = Long.getLong("bench.slowMillis", 200L);
+
+    private static final class Cleanup implements Runnable {
+        private final boolean slow;
+        private final CountDownLatch done;
+
+        Cleanup(boolean slow, CountDownLatch done) {
+            this.slow = slow;
+            this.done = done;
+        }
+
+        public void run() {
+            try {
+                if (slow) {
+                    Thread.sleep(SLOW_MILLIS);
+                } else {
+                    Bench.payload(Bench.PAYLOAD);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+
+    static void run(String name, ThreadPoolExecutor reaper, GuardedObjectStats stats) throws Exception {
+        final CountDownLatch done = new CountDownLatch(CLEANUPS);
+        final AtomicInteger peakThreads = new AtomicInteger();
+        final AtomicInteger peakQueue = new AtomicInteger();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < CLEANUPS; i++) {
+            stats.enqueued();
+            reaper.execute(new Cleanup(i % SLOW_EVERY == 0, done));
+            peakThreads.accumulateAndGet(reaper.getPoolSize(), Math::max);
+            peakQueue.accumulateAndGet(reaper.getQueue().size(), Math::max);
+        }
+        long submitted = System.nanoTime();
+
+        // Dropped cleanups never count down, so only wait for the ones that were kept
+        while (done.getCount() > stats.getDropped()) {
+            peakThreads.accumulateAndGet(reaper.getPoolSize(), Math::max);
+            Thread.sleep(1);
+        }
+        long drained = System.nanoTime();
+        reaper.shutdown();
+        reaper.awaitTermination(1, TimeUnit.MINUTES);
+
+        System.out.printf("%-22s %12.1f %12.1f %10d %10d %10d%n", name,
+                (submitted - start) / 1e6, (drained - start) / 1e6,
+                peakThreads.get(), peakQueue.get(), stats.getDropped());
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-22s %12s %12s %10s %10s %10s%n",
+                "Reaper", "Submit ms", "Drain ms", "Threads", "Max queue", "Dropped");
+
+        // Stats are not registered, the benchmark only reads the counters
+        run("fixed", new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>()), GuardedObjectStats.create());
+
+        GuardedObjectStats stats = GuardedObjectStats.create();
+        run("adaptive caller-runs", new CleanupExecutor("bench", stats,
+                CleanupExecutor.MIN_THREADS, CleanupExecutor.MAX_THREADS, CleanupExecutor.QUEUE_CAPACITY,
+                CleanupExecutor.Overflow.CALLER_RUNS), stats);
+
+        stats = GuardedObjectStats.create();
+        run("adaptive drop", new CleanupExecutor("bench", stats,
+                CleanupExecutor.MIN_THREADS, CleanupExecutor.MAX_THREADS, CleanupExecutor.QUEUE_CAPACITY,
+                CleanupExecutor.Overflow.DROP), stats);
+    }
+}
@@ -0,0 +1,133 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compares the reaper modes of {@link SafeFinalizeSyncRWInstrumentedExample} with a large number of
+ * pending cleanups.
+ *
+ * <p>Every guarded instance has a work call in progress, holding its read lock, when its cleanup
+ * is handed to the reaper. The cleanups then wait for the write lock, mirroring the cleanup task of
+ * the example: the fixed pool of two threads parks both of them and queues the rest, the adaptive
+ * {@link CleanupExecutor} parks a thread per cleanup up to its maximum and queues the rest, and
+ * the virtual thread mode parks one virtual thread per cleanup. The footprint is the heap
+ * in use after a full GC while the cleanups are pending, less the heap used by the instances, and
+ * the number of threads started. Once all work calls complete, the drain time gives the throughput.</p>
+ *
+ * <p>The adaptive mode is given a queue as large as the number of pending cleanups, so that none
+ * of them overflow onto the submitting thread, which holds the read locks. Each mode and size runs
+ * in its own JVM. The virtual thread mode requires JDK 21 or later.</p>
+ *
+ * <ul>
+ *   <li><code>bench.pending</code> - numbers of pending cleanups (default 10000,100000,1000000)</li>
+ *   <li><code>bench.modes</code> - reaper modes (default fixed,adaptive,virtual)</li>
+ * </ul>
+ *
+ * <pre>
+ * java -cp out ReaperModeBenchmark
+ * </pre>
+ */
+public final class ReaperModeBenchmark {
+    private static final String[] PENDING = System.getProperty("bench.pending", "10000,100000,1000000").split(",");
+    private static final String[] MODES = System.getProperty("bench.modes", "fixed,adaptive,virtual").split(",");
+
+    private static final String[] JVM_ARGS = {"-Xmx4g"};
+
+    /**
+     * Mirrors the cleanup task of {@link SafeFinalizeSyncRWInstrumentedExample}.
+     */
+    private static final class CleanupTask implements Runnable {
+        private final ReentrantReadWriteLock lock;
+        private final CountDownLatch cleaned;
+
+        CleanupTask(ReentrantReadWriteLock lock, CountDownLatch cleaned) {
+            this.lock = lock;
+            this.cleaned = cleaned;
+        }
+
+        public void run() {
+            lock.writeLock().lock();
+            try {
+                cleaned.countDown();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    static ExecutorService reaper(String mode, int pending) {
+        if (mode.equals("fixed")) {
+            return new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        } else if (mode.equals("adaptive")) {
+            return new CleanupExecutor("bench", GuardedObjectStats.create(), CleanupExecutor.MIN_THREADS,
+                    CleanupExecutor.MAX_THREADS, pending, CleanupExecutor.Overflow.CALLER_RUNS);
+        } else {
+            return CleanupExecutor.newVirtualThreadPerTaskExecutor();
+        }
+    }
+
+    static long usedHeap(MemoryMXBean memory) {
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    static void run(String mode, int pending) throws Exception {
+        ExecutorService reaper = reaper(mode, pending);
+        if (reaper == null) {
+            System.out.printf("%-9s %9d %s%n", mode, pending, "virtual threads are not available");
+            return;
+        }
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        // The work calls in progress, all on this thread, releasing in the same order
+        ReentrantReadWriteLock[] locks = new ReentrantReadWriteLock[pending];
+        for (int i = 0; i < pending; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+            locks[i].readLock().lock();
+        }
+        long baseline = usedHeap(memory);
+        int baselineThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        CountDownLatch cleaned = new CountDownLatch(pending);
+        long start = System.nanoTime();
+        for (int i = 0; i < pending; i++) {
+            reaper.execute(new CleanupTask(locks[i], cleaned));
+        }
+        long submitted = System.nanoTime();
+        // Give the reaper time to park every cleanup it has started
+        Thread.sleep(1000);
+        long footprint = usedHeap(memory) - baseline;
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount() - baselineThreads;
+
+        long release = System.nanoTime();
+        for (int i = 0; i < pending; i++) {
+            locks[i].readLock().unlock();
+        }
+        cleaned.await();
+        long drained = System.nanoTime();
+        reaper.shutdown();
+
+        System.out.printf("%-9s %9d %10.1f %10.1f %12.0f %10.1f %10d%n", mode, pending,
+                (submitted - start) / 1e6, (drained - release) / 1e6,
+                pending / ((drained - release) / 1e9), footprint / 1048576.0, threads);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2) {
+            run(args[0], Integer.parseInt(args[1]));
+            return;
+        }
+        System.out.printf("%-9s %9s %10s %10s %12s %10s %10s%n",
+                "Mode", "Pending", "Submit ms", "Drain ms", "Cleanups/s", "Heap MB", "Threads");
+        for (String pending : PENDING) {
+            for (String mode : MODES) {
+                Bench.forkWith(JVM_ARGS, ReaperModeBenchmark.class, mode, pending);
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reports the reference processing cost each example pushes onto the GC, per collector.
+ *
+ * <p>Every example runs in its own JVM for every supported collector, with reference processing
+ * logged through <code>-Xlog:gc+ref*=debug</code>. The JVM allocates rounds of instances, keeping
+ * a ring of them alive, and lets the finalizer or reaper catch up between rounds. The unified GC
+ * log is then parsed per collection:</p>
+ * <ul>
+ *   <li>Serial, Parallel and G1 process references in the pause. Reported are the total
+ *   <code>Reference Processing</code> time, the <code>Notify and keep alive finalizable</code> and
+ *   <code>Notify PhantomReferences</code> phases, and the discovered and cleared counts of final
+ *   and phantom references. Despite its name, the cleared count is the number of references
+ *   removed from the discovered lists because their referents were still reachable, which the
+ *   <code>Phase 2 Final before/after</code> lines of <code>gc+ref=trace</code> confirm for final
+ *   references. The remaining ones are enqueued, final references with their referents kept
+ *   alive for <code>finalize()</code>.</li>
+ *   <li>ZGC and Shenandoah process references concurrently, so their time is not pause time. The
+ *   time of <code>Concurrent Process Non-Strong References</code> or <code>Concurrent weak
+ *   references</code> is reported as the total. ZGC reports the discovered and enqueued counts.
+ *   Shenandoah only reports encountered references, which include those found with an already
+ *   marked referent, so its live counts are higher than those of the other collectors.</li>
+ * </ul>
+ *
+ * <p>Of the references a GC discovers, those whose referents turn out unreachable are
+ * <b>pending</b>: they are enqueued, and their objects await finalization or cleanup. The rest are
+ * <b>live</b>, dropped because their objects were still reachable.
+ * The summary gives the sums and per collection averages, and
+ * <code>-Dreport.perCollection=true</code> also prints every collection.</p>
+ *
+ * <ul>
+ *   <li><code>bench.instances</code> - instances per round (default 100000)</li>
+ *   <li><code>bench.rounds</code> - rounds (default 10)</li>
+ *   <li><code>bench.live</code> - instances kept alive in a ring (default 10000)</li>
+ * </ul>
+ *
+ * <pre>
+ * java -cp out ReferenceProcessingReport
+ * java -cp out ReferenceProcessingReport SafeFinalizeSyncRWExample SafePhantomSyncRWExample
+ * </pre>
+ */
+public final class ReferenceProcessingReport {
+    private static final int INSTANCES = Integer.getInteger("bench.instances", 100000);
+    private static final int ROUNDS = Integer.getInteger("bench.rounds", 10);
+    private static final int LIVE = Integer.getInteger("bench.live", 10000);
+    private static final boolean PER_COLLECTION = Boolean.getBoolean("report.perCollection");
+
+    /**
+     * The six finalizable classes, and the finalize-free variants of the RW example to compare with.
+     */
+    static final String[] SUBJECTS = {
+            "BrokenFinalizeExample",
+            "SafeFinalizeSyncExample",
+            "SafeFinalizeSyncRWExample",
+            "SafeFinalizeVolatileFieldExample",
+            "SafeFinalizeVolatileFieldUsingUnsafeExample",
+            "SafeFinalizeVolatileFieldUsingUpdaterExample",
+            "SafeCleanerSyncRWExample",
+            "SafePhantomSyncRWExample"
+    };
+
+    private static final Pattern GC_ID = Pattern.compile("GC\\((\\d+)\\)");
+    private static final Pattern MILLIS = Pattern.compile("([0-9.]+)\\s*ms$");
+    private static final Pattern COUNT = Pattern.compile("(Discovered|Cleared): (\\d+)$");
+    private static final Pattern Z_COUNTS = Pattern.compile(
+            "(Final|Phantom): (\\d+) encountered, (\\d+) discovered, (\\d+) enqueued");
+    private static final Pattern SHENANDOAH_COUNTS = Pattern.compile(
+            "(Encountered|Enqueued)\\s+references: .*Final: (\\d+), Phantom: (\\d+)");
+
+    /**
+     * The reference processing of one collection.
+     */
+    static final class Collection {
+        final int id;
+        boolean concurrent;
+        double totalMillis;
+        double finalMillis;
+        double phantomMillis;
+        long finalExamined;
+        long finalPending;
+        long phantomExamined;
+        long phantomPending;
+
+        Collection(int id) {
+            this.id = id;
+        }
+    }
+
+    static List<Collection> parse(File log) throws IOException {
+        Map<Integer, Collection> collections = new LinkedHashMap<Integer, Collection>();
+        BufferedReader reader = new BufferedReader(new FileReader(log));
+        try {
+            String section = "";
+            String phase = "";
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher id = GC_ID.matcher(line);
+                if (!id.find()) {
+                    continue;
+                }
+                int gc = Integer.parseInt(id.group(1));
+                Collection collection = collections.get(gc);
+                if (collection == null) {
+                    collection = new Collection(gc);
+                    collections.put(gc, collection);
+                }
+                String text = line.substring(id.end()).trim();
+                Matcher millis = MILLIS.matcher(text);
+                Matcher count = COUNT.matcher(text);
+                Matcher z = Z_COUNTS.matcher(text);
+                Matcher shenandoah = SHENANDOAH_COUNTS.matcher(text);
+
+                if (text.startsWith("Reference Processing:") && millis.find()) {
+                    collection.totalMillis += Double.parseDouble(millis.group(1));
+                } else if (text.startsWith("Notify and keep alive finalizable") || text.startsWith("Notify PhantomReferences")) {
+                    phase = text;
+                } else if (text.startsWith("FinalRef:") && phase.startsWith("Notify and keep") && millis.find()) {
+                    collection.finalMillis += Double.parseDouble(millis.group(1));
+                } else if (text.startsWith("PhantomRef:") && phase.startsWith("Notify Phantom") && millis.find()) {
+                    collection.phantomMillis += Double.parseDouble(millis.group(1));
+                } else if (text.endsWith("Reference:")) {
+                    section = text;
+                } else if (count.find()) {
+                    // Discovered references are pending unless cleared, which means dropped as reachable
+                    long value = Long.parseLong(count.group(2));
+                    long pending = count.group(1).equals("Discovered") ? value : -value;
+                    if (section.startsWith("FinalReference")) {
+                        collection.finalExamined += Math.max(pending, 0);
+                        collection.finalPending += pending;
+                    } else if (section.startsWith("PhantomReference")) {
+                        collection.phantomExamined += Math.max(pending, 0);
+                        collection.phantomPending += pending;
+                    }
+                } else if (z.find()) {
+                    collection.concurrent = true;
+                    // Discovered, like the other collectors, not encountered
+                    long discovered = Long.parseLong(z.group(3));
+                    long enqueued = Long.parseLong(z.group(4));
+                    if (z.group(1).equals("Final")) {
+                        collection.finalExamined += discovered;
+                        collection.finalPending += enqueued;
+                    } else {
+                        collection.phantomExamined += discovered;
+                        collection.phantomPending += enqueued;
+                    }
+                } else if (shenandoah.find()) {
+                    collection.concurrent = true;
+                    long fin = Long.parseLong(shenandoah.group(2));
+                    long phantom = Long.parseLong(shenandoah.group(3));
+                    if (shenandoah.group(1).equals("Encountered")) {
+                        collection.finalExamined += fin;
+                        collection.phantomExamined += phantom;
+                    } else {
+                        collection.finalPending += fin;
+                        collection.phantomPending += phantom;
+                    }
+                } else if ((text.startsWith("Concurrent Process Non-Strong References")
+                        || text.startsWith("Concurrent weak references")) && millis.find()) {
+                    collection.concurrent = true;
+                    collection.totalMillis += Double.parseDouble(millis.group(1));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        // Collections that never looked at a final or phantom reference are left out
+        List<Collection> result = new ArrayList<Collection>();
+        for (Collection collection : collections.values()) {
+            if (collection.finalExamined + collection.phantomExamined > 0 || collection.totalMillis > 0) {
+                result.add(collection);
+            }
+        }
+        return result;
+    }
+
+    static void report(String subject, String collector, List<Collection> collections) {
+        if (PER_COLLECTION) {
+            for (Collection c : collections) {
+                System.out.printf("  %-44s %-10s GC(%d)%s ref %.2f ms, final %.2f ms live %d pending %d,"
+                                + " phantom %.2f ms live %d pending %d%n",
+                        subject, collector, c.id, c.concurrent ? " concurrent" : "", c.totalMillis,
+                        c.finalMillis, c.finalExamined - c.finalPending, c.finalPending,
+                        c.phantomMillis, c.phantomExamined - c.phantomPending, c.phantomPending);
+            }
+        }
+        double total = 0, max = 0, finalMillis = 0, phantomMillis = 0;
+        long finalLive = 0, finalPending = 0, phantomLive = 0, phantomPending = 0;
+        boolean concurrent = false;
+        for (Collection c : collections) {
+            total += c.totalMillis;
+            max = Math.max(max, c.totalMillis);
+            finalMillis += c.finalMillis;
+            phantomMillis += c.phantomMillis;
+            finalLive += c.finalExamined - c.finalPending;
+            finalPending += c.finalPending;
+            phantomLive += c.phantomExamined - c.phantomPending;
+            phantomPending += c.phantomPending;
+            concurrent |= c.concurrent;
+        }
+        int n = Math.max(1, collections.size());
+        System.out.printf("%-44s %-11s %5d %9.1f %8.3f %8.2f %9.1f %10.1f %10d %10d %10d %10d%n",
+                subject, collector + (concurrent ? "*" : ""), collections.size(), total, total / n, max,
+                finalMillis, phantomMillis, finalLive / n, finalPending / n, phantomLive / n, phantomPending / n);
+    }
+
+    /**
+     * Forked: allocates the subject, keeping a ring of instances alive.
+     */
+    static void run(String subject) throws Exception {
+        Bench.silenceStderr();
+        Constructor<?> constructor = Class.forName(subject).getDeclaredConstructor();
+        constructor.setAccessible(true);
+        Object[] live = new Object[LIVE];
+        int next = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < INSTANCES; i++) {
+                Object instance = constructor.newInstance();
+                if (i % 10 == 0) {
+                    live[next++ % LIVE] = instance;
+                }
+            }
+            // Let the finalizer or the reaper catch up, so the backlog does not exhaust the heap
+            System.runFinalization();
+            Thread.sleep(100);
+        }
+        System.exit(0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("run")) {
+            run(args[1]);
+            return;
+        }
+        String[] subjects = args.length > 0 ? args : SUBJECTS;
+
+        List<String> collectors = new ArrayList<String>();
+        for (String collector : FlagMatrix.COLLECTORS) {
+            if (FlagMatrix.supported(collector)) {
+                collectors.add(collector);
+            } else {
+                System.out.println("Skipping " + collector + "GC, not supported by this JVM");
+            }
+        }
+
+        System.out.println("* concurrent reference processing, not part of a pause");
+        System.out.printf("%-44s %-11s %5s %9s %8s %8s %9s %10s %10s %10s %10s %10s%n",
+                "Subject", "Collector", "GCs", "Ref ms", "ms/GC", "Max ms", "Final ms", "Phantom ms",
+                "Final live", "pending", "Phant live", "pending");
+        for (String subject : subjects) {
+            for (String collector : collectors) {
+                File log = File.createTempFile(subject + "-" + collector, ".log");
+                log.deleteOnExit();
+                Bench.forkCapture(new String[] {"-XX:+Use" + collector + "GC", "-Xmx256m",
+                        "-Xlog:gc+ref*=debug,gc+phases=info,gc=info:file=" + log.getAbsolutePath()},
+                        ReferenceProcessingReport.class, "run", subject);
+                report(subject, collector, parse(log));
+            }
+        }
+    }
+}
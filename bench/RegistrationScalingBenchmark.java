@@ -0,0 +1,104 @@
+import java.lang.ref.Cleaner;
+
+/**
+ * Measures how allocating guarded objects scales with the number of allocating threads.
+ *
+ * <p>Each thread allocates guarded objects and drops them straight away, so the throughput covers
+ * the registration of every object as well as the GC work and cleanup needed to get rid of it
+ * again. The variants are:</p>
+ * <ul>
+ *   <li><b>Plain</b> - an unguarded object of the same shape, the baseline</li>
+ *   <li><b>Finalize</b> - a <code>finalize()</code> method, registered in the global list of the
+ *   JDK under a single lock</li>
+ *   <li><b>Cleaner</b> - registration with one shared <code>java.lang.ref.Cleaner</code></li>
+ *   <li><b>Striped</b> - registration with a {@link StripedCleaner}</li>
+ * </ul>
+ *
+ * <p>Each variant runs in its own JVM, at every <code>-Dbench.threads</code> count.</p>
+ *
+ * <pre>
+ * java -cp out -Dbench.threads=1,2,4,8,16,N RegistrationScalingBenchmark
+ * </pre>
+ */
+public final class RegistrationScalingBenchmark {
+    static final String[] VARIANTS = {"Plain", "Finalize", "Cleaner", "Striped"};
+
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final StripedCleaner STRIPED = StripedCleaner.create("bench");
+
+    static volatile int cleaned;
+
+    static final Runnable CLEANUP = new Runnable() {
+        public void run() {
+            cleaned++;
+        }
+    };
+
+    interface Allocator {
+        Object allocate();
+    }
+
+    static final class Plain {
+        long resource = 1L;
+    }
+
+    static final class Finalize {
+        long resource = 1L;
+
+        protected void finalize() {
+            cleaned++;
+        }
+    }
+
+    static final class Registered {
+        long resource = 1L;
+
+        Registered(boolean striped) {
+            if (striped) {
+                STRIPED.register(this, CLEANUP);
+            } else {
+                CLEANER.register(this, CLEANUP);
+            }
+        }
+    }
+
+    static Allocator allocator(String variant) {
+        if (variant.equals("Plain")) {
+            return Plain::new;
+        } else if (variant.equals("Finalize")) {
+            return Finalize::new;
+        } else if (variant.equals("Cleaner")) {
+            return () -> new Registered(false);
+        } else {
+            return () -> new Registered(true);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("stripes=" + StripedCleaner.STRIPES);
+            Bench.printHeader();
+            for (String variant : VARIANTS) {
+                Bench.fork(RegistrationScalingBenchmark.class, variant);
+            }
+            return;
+        }
+
+        // Forked: measure a single variant at every thread count
+        final Allocator allocator = allocator(args[0]);
+        for (int threads : Bench.threadCounts()) {
+            Bench.print(Bench.run(args[0], threads, new Bench.OpFactory() {
+                public Bench.Op create() {
+                    return new Bench.Op() {
+                        Object last;
+
+                        public void invoke() {
+                            // Published to a field so that the allocation is not eliminated
+                            last = allocator.allocate();
+                        }
+                    };
+                }
+            }));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of handing cleanups to the {@link CleanupScheduler} against the executors.
+ *
+ * <p>Producer threads, standing in for the finalizer thread, hand trivial cleanups to a reaper as
+ * fast as they can. The enqueue cost is the time spent in <code>execute</code> per cleanup on the
+ * producers, and the throughput is the number of cleanups run per second until the last one is
+ * done. Every reaper runs in its own JVM and each measurement is repeated, reporting the last
+ * round, so that all code is compiled.</p>
+ *
+ * <ul>
+ *   <li><code>bench.cleanups</code> - cleanups per round (default 1000000)</li>
+ *   <li><code>bench.producers</code> - numbers of producer threads (default 1,4)</li>
+ *   <li><code>bench.rounds</code> - rounds per measurement (default 10)</li>
+ * </ul>
+ *
+ * <pre>
+ * java -cp out SchedulerBenchmark
+ * </pre>
+ */
+public final class SchedulerBenchmark {
+    private static final int CLEANUPS = Integer.getInteger("bench.cleanups", 1000000);
+    private static final int ROUNDS = Integer.getInteger("bench.rounds", 10);
+
+    static final String[] REAPERS = {"fixed", "adaptive", "single"};
+
+    static ExecutorService reaper(String name) {
+        if (name.equals("fixed")) {
+            return new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        } else if (name.equals("adaptive")) {
+            // Large enough a queue that nothing overflows onto the producers
+            return new CleanupExecutor("bench", GuardedObjectStats.create(), CleanupExecutor.MIN_THREADS,
+                    CleanupExecutor.MAX_THREADS, CLEANUPS, CleanupExecutor.Overflow.CALLER_RUNS);
+        } else {
+            return new CleanupScheduler("bench");
+        }
+    }
+
+    static void round(final ExecutorService reaper, int producers, long[] result) throws Exception {
+        final CountDownLatch done = new CountDownLatch(CLEANUPS);
+        final Runnable cleanup = done::countDown;
+        final int perProducer = CLEANUPS / producers;
+        final long[] enqueueNanos = new long[producers];
+
+        Thread[] threads = new Thread[producers];
+        long start = System.nanoTime();
+        for (int p = 0; p < producers; p++) {
+            final int index = p;
+            threads[p] = new Thread(() -> {
+                int count = index == 0 ? CLEANUPS - perProducer * (producers - 1) : perProducer;
+                long begin = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    reaper.execute(cleanup);
+                }
+                enqueueNanos[index] = System.nanoTime() - begin;
+            });
+            threads[p].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        done.await();
+        long end = System.nanoTime();
+
+        long enqueue = 0;
+        for (long nanos : enqueueNanos) {
+            enqueue += nanos;
+        }
+        result[0] = enqueue / CLEANUPS;
+        result[1] = end - start;
+    }
+
+    static void run(String name, int producers) throws Exception {
+        ExecutorService reaper = reaper(name);
+        long[] result = new long[2];
+        for (int i = 0; i < ROUNDS; i++) {
+            round(reaper, producers, result);
+        }
+        reaper.shutdown();
+        reaper.awaitTermination(1, TimeUnit.MINUTES);
+        System.out.printf("%-10s %10d %14d %14.0f%n", name, producers,
+                result[0], CLEANUPS / (result[1] / 1e9));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2) {
+            run(args[0], Integer.parseInt(args[1]));
+            return;
+        }
+        System.out.printf("%-10s %10s %14s %14s%n", "Reaper", "Producers", "Enqueue ns", "Cleanups/s");
+        for (String producers : System.getProperty("bench.producers", "1,4").split(",")) {
+            for (String reaper : REAPERS) {
+                Bench.fork(SchedulerBenchmark.class, reaper, producers);
+            }
+        }
+    }
+}
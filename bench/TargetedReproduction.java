@@ -0,0 +1,170 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reproduces premature finalization in the examples with only their own methods compiled eagerly.
+ *
+ * <p>Running an example with <code>-Xcomp</code> compiles every method of the JDK on first use,
+ * which makes start-up slow and the timing noisy. In <b>targeted</b> mode, a compiler directives
+ * file is generated for each example instead. It excludes every method from compilation except
+ * those of the example class and its nested classes, which are compiled by C2 on first invocation
+ * and in the foreground, so that the very first call to <code>work()</code> already runs compiled.
+ * The <b>xcomp</b> mode uses the <code>-Xcomp -XX:+TieredCompilation</code> options from the
+ * {@link BrokenFinalizeExample} javadoc for comparison.</p>
+ *
+ * <p>The output of every example is checked for a <code>Finalize</code> or clean-up message while
+ * a work call is in progress, and the time until the first work call starts is reported as the
+ * start-up cost. Examples run in parallel, <code>-Dmatrix.parallelism</code> at a time.</p>
+ *
+ * <p>A forked JVM that exits with an error, for instance because it rejected the directives file
+ * or an option, is reported as <code>ERROR</code> with its last line of output, and fails the run.
+ * A run in which nothing was finalized or cleaned up at all proves nothing either way, and is
+ * reported as <code>INCONCLUSIVE</code>.</p>
+ *
+ * <pre>
+ * java -cp out TargetedReproduction
+ * java -cp out TargetedReproduction BrokenFinalizeExample SafeFinalizeVolatileFieldExample
+ * </pre>
+ */
+public final class TargetedReproduction {
+    private static final int PARALLELISM =
+            Integer.getInteger("matrix.parallelism", Runtime.getRuntime().availableProcessors());
+
+    static final String[] EXAMPLES = {
+            "BrokenFinalizeExample",
+            "SafeFinalizeSyncExample",
+            "SafeFinalizeSyncUnpinnedExample",
+            "SafeFinalizeSyncRWExample",
+            "SafeFinalizeSyncRWHandoffExample",
+            "SafeFinalizeSyncStampedExample",
+            "SafeFinalizeVolatileFieldExample",
+            "SafeFinalizeVolatileFieldUsingUnsafeExample",
+            "SafeFinalizeVolatileFieldUsingUpdaterExample",
+            "SafeFinalizeVarHandleExample",
+            "SafeFinalizeReachabilityFenceExample",
+            "SafeFinalizeGuardExample",
+            "SafeCleanerSyncExample",
+            "SafeCleanerSyncRWExample",
+            "SafeCleanerVolatileFieldExample",
+            "SafeCleanerVolatileFieldUsingUnsafeExample",
+            "SafeCleanerVolatileFieldUsingUpdaterExample",
+            "SafePhantomSyncRWExample"
+    };
+
+    static final String[] XCOMP = {"-Xcomp", "-XX:+TieredCompilation"};
+
+    /**
+     * Writes a directives file compiling only the methods of the example, with C2, synchronously.
+     */
+    static File directives(String example) throws IOException {
+        File file = File.createTempFile(example, ".json");
+        file.deleteOnExit();
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write("[\n");
+            writer.write("  { match: \"" + example + "*::*\", c1: { Exclude: true },"
+                    + " c2: { Exclude: false, BackgroundCompilation: false } },\n");
+            writer.write("  { match: \"*.*\", Exclude: true }\n");
+            writer.write("]\n");
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    static String[] targeted(String example) throws IOException {
+        return new String[] {
+                "-XX:+UnlockDiagnosticVMOptions",
+                "-XX:CompilerDirectivesFile=" + directives(example).getAbsolutePath(),
+                "-Xcomp",
+                "-XX:-TieredCompilation"
+        };
+    }
+
+    private static class Outcome {
+        long firstWorkMillis = -1;
+        long totalMillis;
+        boolean premature;
+        int finalized;
+        int exit;
+        String lastLine;
+    }
+
+    static Outcome run(String example, String[] jvmArgs) throws Exception {
+        Outcome outcome = new Outcome();
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(Bench.command(jvmArgs,
+                Class.forName(example, false, TargetedReproduction.class.getClassLoader())))
+                .redirectErrorStream(true).start();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        int working = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            outcome.lastLine = line;
+            if (line.startsWith("Work start")) {
+                if (outcome.firstWorkMillis < 0) {
+                    outcome.firstWorkMillis = (System.nanoTime() - start) / 1000000;
+                }
+                working++;
+            } else if (line.startsWith("Work complete")) {
+                working--;
+            } else if (line.startsWith("Finalize") || line.startsWith("Clean")) {
+                outcome.finalized++;
+                outcome.premature |= working > 0;
+            }
+        }
+        outcome.exit = process.waitFor();
+        outcome.totalMillis = (System.nanoTime() - start) / 1000000;
+        return outcome;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] examples = args.length > 0 ? args : EXAMPLES;
+        String[] modes = {"xcomp", "targeted"};
+
+        ExecutorService forks = Executors.newFixedThreadPool(PARALLELISM);
+        List<Future<Outcome>> outcomes = new ArrayList<Future<Outcome>>();
+        for (final String example : examples) {
+            outcomes.add(forks.submit(() -> run(example, XCOMP)));
+            outcomes.add(forks.submit(() -> run(example, targeted(example))));
+        }
+
+        boolean failed = false;
+        System.out.printf("%-46s %-9s %12s %10s %10s %12s%n",
+                "Example", "Mode", "1st work ms", "Total ms", "Finalized", "Verdict");
+        for (int i = 0; i < outcomes.size(); i++) {
+            String example = examples[i / 2];
+            Outcome outcome = outcomes.get(i).get();
+            String verdict;
+            if (outcome.exit != 0) {
+                verdict = "ERROR";
+                failed = true;
+            } else if (outcome.finalized == 0) {
+                verdict = "INCONCLUSIVE";
+            } else if (example.startsWith("Broken")) {
+                verdict = outcome.premature ? "REPRO" : "NO-REPRO";
+            } else {
+                verdict = outcome.premature ? "FAIL" : "PASS";
+                failed |= outcome.premature;
+            }
+            System.out.printf("%-46s %-9s %12d %10d %10d %12s%n", example, modes[i % 2],
+                    outcome.firstWorkMillis, outcome.totalMillis, outcome.finalized, verdict);
+            if (outcome.exit != 0) {
+                System.out.println("  exited with " + outcome.exit + ": " + outcome.lastLine);
+            }
+        }
+        forks.shutdown();
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Compares the <code>VarHandle</code> release write against <code>putOrderedInt</code> and
+ * <code>lazySet</code>.
+ *
+ * <p>Two things are measured, each in a fresh JVM:</p>
+ * <ul>
+ *   <li><b>init</b> - the time taken to initialize each example class, which for the unsafe
+ *   example includes the reflective lookup of <code>theUnsafe</code>.</li>
+ *   <li>the per-call epilogue cost of the corresponding {@link EpilogueBenchmark} workers,
+ *   including an opaque write for reference.</li>
+ * </ul>
+ *
+ * <pre>
+ * java -cp out -Dbench.threads=1,N VarHandleBenchmark
+ * </pre>
+ */
+public final class VarHandleBenchmark {
+    private static final String[] EXAMPLES = {
+            "SafeFinalizeVolatileFieldUsingUnsafeExample",
+            "SafeFinalizeVolatileFieldUsingUpdaterExample",
+            "SafeFinalizeVarHandleExample"
+    };
+
+    private static final String[] WORKERS = {"Broken", "Ordered", "LazySet", "Release", "Opaque"};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("init")) {
+            long start = System.nanoTime();
+            Class.forName(args[1], true, VarHandleBenchmark.class.getClassLoader());
+            long end = System.nanoTime();
+            System.out.printf("%-48s init %10.1f us%n", args[1], (end - start) / 1e3);
+            return;
+        }
+
+        for (String example : EXAMPLES) {
+            Bench.fork(VarHandleBenchmark.class, "init", example);
+        }
+        System.out.println();
+
+        System.out.println("payload=" + Bench.PAYLOAD);
+        Bench.printHeader();
+        for (String worker : WORKERS) {
+            Bench.fork(EpilogueBenchmark.class, worker);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs a large number of virtual threads through the work method of {@link SafeFinalizeSyncExample}
+ * and {@link SafeFinalizeSyncUnpinnedExample}.
+ *
+ * <p>The virtual threads share a smaller number of instances, so every work method is contended:
+ * most threads have to wait for the lock of their instance, and the one holding it blocks inside
+ * the work call. With the monitor of the sync example, both the holder sleeping inside
+ * <code>synchronized</code> and the threads blocked entering it pin their carriers. The
+ * <code>ReentrantLock</code> of the unpinned variant parks waiting threads and the sleeping holder
+ * alike, releasing the carrier. Pinned carriers show up as a low peak of concurrently blocked work
+ * calls, bounded by the number of carrier threads rather than the number of instances, and a
+ * correspondingly long total time. Carrier utilization is reported as the process CPU time over the
+ * wall time available to all carriers.</p>
+ *
+ * <p>Requires JDK 21 or later, and reports virtual threads as unsupported before that. From JDK 24
+ * on, monitors no longer pin (JEP 491) and both variants are expected to perform alike. The results
+ * have not been verified: the benchmark has only been run on JDK 17, where it measures nothing.</p>
+ *
+ * <ul>
+ *   <li><code>bench.vthreads</code> - number of virtual threads (default 100000)</li>
+ *   <li><code>bench.instances</code> - number of instances shared by the virtual threads, which
+ *   should exceed the number of carrier threads (default 256)</li>
+ *   <li><code>bench.sleepMillis</code> - blocking time inside each work call (default 1)</li>
+ * </ul>
+ *
+ * <pre>
+ * java -cp out VirtualThreadBenchmark
+ * </pre>
+ */
+public final class VirtualThreadBenchmark {
+    private static final int VTHREADS = Integer.getInteger("bench.vthreads", 100000);
+    private static final int INSTANCES = Integer.getInteger("bench.instances", 256);
+    private static final long SLEEP_MILLIS = Long.getLong("bench.sleepMillis", 1L);
+
+    static final AtomicInteger inside = new AtomicInteger();
+    static final AtomicInteger peak = new AtomicInteger();
+
+    interface Worker {
+        void work() throws Exception;
+    }
+
+    static void blocking() throws InterruptedException {
+        int now = inside.incrementAndGet();
+        int max;
+        while (now > (max = peak.get()) && !peak.compareAndSet(max, now)) {
+            // retry
+        }
+        try {
+            Thread.sleep(SLEEP_MILLIS);
+        } finally {
+            inside.decrementAndGet();
+        }
+    }
+
+    /**
+     * Mirrors {@link SafeFinalizeSyncExample}.
+     */
+    static final class Monitor implements Worker {
+        public synchronized void work() throws Exception {
+            blocking();
+        }
+
+        protected synchronized void finalize() {
+        }
+    }
+
+    /**
+     * Mirrors {@link SafeFinalizeSyncUnpinnedExample}.
+     */
+    static final class Unpinned implements Worker {
+        private final ReentrantLock lock = new ReentrantLock();
+
+        public void work() throws Exception {
+            ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                blocking();
+            } finally {
+                synchronized (this) {
+                    lock.unlock();
+                }
+            }
+        }
+
+        protected synchronized void finalize() {
+        }
+    }
+
+    private static class Call implements Runnable {
+        private final Worker worker;
+
+        Call(Worker worker) {
+            this.worker = worker;
+        }
+
+        public void run() {
+            try {
+                worker.work();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    static void run(String mode) throws Exception {
+        ExecutorService executor = Bench.newVirtualThreadPerTaskExecutor();
+        if (executor == null) {
+            System.out.printf("%-10s virtual threads are not supported by this JVM%n", mode);
+            return;
+        }
+
+        com.sun.management.OperatingSystemMXBean os =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        int carriers = Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+                Runtime.getRuntime().availableProcessors());
+
+        Worker[] workers = new Worker[INSTANCES];
+        for (int i = 0; i < INSTANCES; i++) {
+            workers[i] = mode.equals("Unpinned") ? new Unpinned() : new Monitor();
+        }
+
+        long cpuStart = os.getProcessCpuTime();
+        long start = System.nanoTime();
+        for (int i = 0; i < VTHREADS; i++) {
+            // Spread over the shared instances, so that every lock is contended
+            executor.execute(new Call(workers[i % INSTANCES]));
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.DAYS);
+        long wall = System.nanoTime() - start;
+        long cpu = os.getProcessCpuTime() - cpuStart;
+
+        System.out.printf("%-10s %10d %10d %10d %12.1f %14.0f %10d %12.1f%n", mode, VTHREADS, INSTANCES,
+                SLEEP_MILLIS, wall / 1e6, VTHREADS / (wall / 1e9), peak.get(), 100.0 * cpu / ((double) wall * carriers));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1) {
+            run(args[0]);
+            return;
+        }
+
+        System.out.printf("%-10s %10s %10s %10s %12s %14s %10s %12s%n",
+                "Mode", "Threads", "Instances", "Sleep ms", "Total ms", "calls/s", "Peak", "Carrier CPU%");
+        Bench.fork(VirtualThreadBenchmark.class, "Monitor");
+        Bench.fork(VirtualThreadBenchmark.class, "Unpinned");
+    }
+}
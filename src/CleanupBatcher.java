@@ -0,0 +1,128 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Collects cleanups into batches, which a single drain thread takes and runs as a whole.
+ *
+ * <p>When thousands of guarded objects die in one GC cycle, scheduling each cleanup on its own
+ * pays a wake-up of the reaper per object. Here the finalizer pushes preallocated
+ * {@link CleanupScheduler.Task}s onto the open batch, a lock-free stack in which every task records
+ * the size of the batch so far. Only the first task of a batch wakes the drain thread, which then
+ * lingers for up to <code>reaper.batchLinger</code> milliseconds (default 1) for the batch to fill,
+ * and the task completing a batch of <code>batchSize</code> cuts the wait short. The drain thread
+ * closes the batch by swapping the stack for an empty one, and runs the cleanups in the order they
+ * were scheduled. A batch thus costs one wake-up and one atomic exchange on the drain thread, and
+ * every cleanup a single compare and set on the finalizer thread.</p>
+ *
+ * <p>As with {@link CleanupScheduler}, cleanups run on the drain thread must not block.</p>
+ */
+public final class CleanupBatcher {
+    static final long LINGER_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("reaper.batchLinger", 1L));
+
+    private final AtomicReference<CleanupScheduler.Task> batch = new AtomicReference<CleanupScheduler.Task>();
+    private final int batchSize;
+
+    private final Thread drainer;
+    private volatile boolean parked;
+    private volatile boolean shutdown;
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    private final LongAdder batches = new LongAdder();
+
+    public CleanupBatcher(String name, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        drainer = new Thread(this::drain, name + "-batch-reaper");
+        drainer.start();
+    }
+
+    /**
+     * Adds a task to the open batch without allocating.
+     */
+    public void schedule(CleanupScheduler.Task task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Cleanup batcher has been shut down");
+        }
+        CleanupScheduler.Task top;
+        do {
+            top = batch.get();
+            task.next = top;
+            task.depth = top == null ? 1 : top.depth + 1;
+        } while (!batch.compareAndSet(top, task));
+
+        if (task.depth == batchSize || (task.depth == 1 && parked)) {
+            LockSupport.unpark(drainer);
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                CleanupScheduler.Task top = batch.get();
+                if (top == null) {
+                    if (shutdown) {
+                        return;
+                    }
+                    parked = true;
+                    if (batch.get() == null && !shutdown) {
+                        LockSupport.park(this);
+                    }
+                    parked = false;
+                    continue;
+                }
+                if (top.depth < batchSize && !shutdown) {
+                    // Woken by the first task of the batch, give the rest a moment to arrive
+                    LockSupport.parkNanos(this, LINGER_NANOS);
+                }
+                run(batch.getAndSet(null));
+                batches.increment();
+            }
+        } finally {
+            terminated.countDown();
+        }
+    }
+
+    private static void run(CleanupScheduler.Task top) {
+        // The stack holds the latest task first, reverse it to clean up in scheduling order
+        CleanupScheduler.Task first = null;
+        while (top != null) {
+            CleanupScheduler.Task next = top.next;
+            top.next = first;
+            first = top;
+            top = next;
+        }
+        while (first != null) {
+            CleanupScheduler.Task task = first;
+            first = task.next;
+            try {
+                task.runScheduled();
+            } catch (Throwable t) {
+                // A failing cleanup must not stop the rest of the batch
+                System.err.println("Cleanup failed: " + t);
+                t.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * The number of batches run so far.
+     */
+    public long batches() {
+        return batches.sum();
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        LockSupport.unpark(drainer);
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+}
@@ -0,0 +1,186 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Accounts for the native memory and handles held by guarded objects until they are cleaned up.
+ *
+ * <p>A guarded object may hold resources the GC knows nothing about, which are only released once
+ * it has been closed or cleaned up after finalization. A thread allocating faster than the
+ * finalizer thread and the reapers clean up can exhaust them while the heap still looks healthy.
+ * Every guarded object therefore reserves its bytes and handles here before it is constructed, and
+ * the reservation is released by whichever of close or the cleanup runs first. All the
+ * <code>Safe*</code> examples take part, whether they clean up in <code>finalize()</code>, on a
+ * reaper, through a <code>Cleaner</code> or a phantom reference. A cleanup that a saturated reaper
+ * discards still gives its reservation back, see {@link CleanupExecutor.Cleanup#discarded()}: its
+ * resource leaks, but no cleanup will ever release it.</p>
+ *
+ * <p>When a reservation would exceed a limit, the allocating thread applies backpressure the way
+ * direct buffers do: it triggers a full GC so that unreachable objects are discovered, runs pending
+ * finalizers, and then retries with exponentially growing sleeps while the reapers catch up. If
+ * nothing frees enough within about half a second, the reservation fails with an
+ * <code>OutOfMemoryError</code>, as a native allocation would.</p>
+ *
+ * <p>The examples share the default budget, limited with <code>-Dbudget.maxBytes</code> (default
+ * the maximum heap size, as for direct buffers) and <code>-Dbudget.maxHandles</code> (default
+ * unlimited). Each instance stands in for <code>budget.resourceBytes</code> bytes (default 64) and
+ * one handle. The budget is registered as the MBean
+ * <code>finalize.examples:type=CleanupBudget</code>.</p>
+ *
+ * <p>A finalizable object is registered for finalization as soon as the constructor of
+ * <code>Object</code> returns, so a failed reservation must not leave a constructed object behind
+ * whose finalizer would release it. The finalizable examples reserve in the arguments of a
+ * delegating constructor, which are evaluated before any superclass constructor runs. Examples
+ * using a <code>Cleaner</code> or a phantom reference simply reserve before registering.</p>
+ */
+public final class CleanupBudget implements CleanupBudgetMBean {
+    static final long MAX_BYTES = Long.getLong("budget.maxBytes", Runtime.getRuntime().maxMemory());
+    static final long MAX_HANDLES = Long.getLong("budget.maxHandles", Long.MAX_VALUE);
+    static final long RESOURCE_BYTES = Long.getLong("budget.resourceBytes", 64L);
+
+    // Sleeps of 1, 2, 4 ... 256 ms, about 0.5 s in total, as for direct buffers
+    private static final int MAX_SLEEPS = 9;
+
+    private static final CleanupBudget DEFAULT = register(new CleanupBudget(MAX_BYTES, MAX_HANDLES));
+
+    private final long maxBytes;
+    private final long maxHandles;
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final AtomicLong reservedHandles = new AtomicLong();
+
+    private final LongAdder collections = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    CleanupBudget(long maxBytes, long maxHandles) {
+        if (maxBytes < 0 || maxHandles < 0) {
+            throw new IllegalArgumentException("Limits must not be negative: " + maxBytes + ", " + maxHandles);
+        }
+        this.maxBytes = maxBytes;
+        this.maxHandles = maxHandles;
+    }
+
+    /**
+     * The budget shared by the guarded examples.
+     */
+    public static CleanupBudget shared() {
+        return DEFAULT;
+    }
+
+    private static CleanupBudget register(CleanupBudget budget) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(budget,
+                    new ObjectName("finalize.examples:type=CleanupBudget"));
+        } catch (JMException e) {
+            System.err.println("Could not register the cleanup budget: " + e);
+        }
+        return budget;
+    }
+
+    /**
+     * Reserves resources for a new guarded object, waiting for pending cleanups if the budget is
+     * exhausted. Returns this budget, which the caller later releases the same amounts to.
+     *
+     * @throws OutOfMemoryError if cleaning up unreachable objects did not free enough in time
+     */
+    public CleanupBudget reserve(long bytes, int handles) {
+        if (tryReserve(bytes, handles)) {
+            return this;
+        }
+
+        // Unreachable guarded objects are only found by a GC, and only release their
+        // reservations once finalized and cleaned up
+        collections.increment();
+        System.gc();
+        System.runFinalization();
+
+        boolean interrupted = false;
+        try {
+            long sleepMillis = 1L;
+            for (int sleeps = 0; ; sleeps++) {
+                if (tryReserve(bytes, handles)) {
+                    return this;
+                }
+                if (sleeps == MAX_SLEEPS) {
+                    break;
+                }
+                waits.increment();
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+                sleepMillis <<= 1;
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        failures.increment();
+        throw new OutOfMemoryError("Cannot reserve " + bytes + " bytes and " + handles
+                + " handles pending cleanup (reserved: " + reservedBytes.get() + " bytes, "
+                + reservedHandles.get() + " handles, limit: " + maxBytes + " bytes, "
+                + maxHandles + " handles)");
+    }
+
+    private boolean tryReserve(long bytes, int handles) {
+        long total;
+        do {
+            total = reservedBytes.get();
+            if (bytes > maxBytes - total) {
+                return false;
+            }
+        } while (!reservedBytes.compareAndSet(total, total + bytes));
+
+        do {
+            total = reservedHandles.get();
+            if (handles > maxHandles - total) {
+                // Give the bytes back, another thread may be waiting for them
+                reservedBytes.addAndGet(-bytes);
+                return false;
+            }
+        } while (!reservedHandles.compareAndSet(total, total + handles));
+        return true;
+    }
+
+    /**
+     * Releases what a guarded object reserved, once its resources have been released.
+     */
+    public void release(long bytes, int handles) {
+        reservedBytes.addAndGet(-bytes);
+        reservedHandles.addAndGet(-handles);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxHandles() {
+        return maxHandles;
+    }
+
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    public long getReservedHandles() {
+        return reservedHandles.get();
+    }
+
+    public long getCollections() {
+        return collections.sum();
+    }
+
+    public long getWaits() {
+        return waits.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * Management interface of {@link CleanupBudget}.
+ */
+public interface CleanupBudgetMBean {
+    /** Limit of the bytes held by guarded objects that have not been cleaned up. */
+    long getMaxBytes();
+
+    /** Limit of the handles held by guarded objects that have not been cleaned up. */
+    long getMaxHandles();
+
+    /** Bytes reserved by live guarded objects, and by unreachable ones pending cleanup. */
+    long getReservedBytes();
+
+    /** Handles reserved by live guarded objects, and by unreachable ones pending cleanup. */
+    long getReservedHandles();
+
+    /** Full GCs triggered by reservations that exceeded a limit. */
+    long getCollections();
+
+    /** Sleeps of reserving threads waiting for pending cleanups to release enough. */
+    long getWaits();
+
+    /** Reservations that failed with an <code>OutOfMemoryError</code>. */
+    long getFailures();
+}
@@ -0,0 +1,268 @@
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A reaper executor for cleanup tasks that sizes itself to the cleanup backlog.
+ *
+ * <p>A fixed pool with an unbounded queue handles a burst of finalized objects badly: the tasks
+ * queue without limit, and a couple of cleanups waiting for long work calls to release a lock tie
+ * up every thread. This executor has a bounded queue, and a sizer thread that samples the queue
+ * depth and the average cleanup time every <code>reaper.adjustInterval</code> milliseconds. The
+ * pool doubles while tasks are waiting and either there are more of them than threads or cleanups
+ * take longer than <code>reaper.targetLatency</code> milliseconds, and gives back one thread per
+ * interval once the queue is empty and threads are idle.</p>
+ *
+ * <p>When the queue is full and the pool is at its maximum, the overflow policy applies:</p>
+ * <ul>
+ *   <li><code>CALLER_RUNS</code> - the cleanup runs on the submitting thread, normally the
+ *   finalizer thread, which slows the producer down. A {@link Cleanup} that takes a lock is only
+ *   tried without blocking there, and set aside if it would block, so that finalization is never
+ *   held up by a work call. The sizer resubmits cleanups set aside once the queue has room.
+ *   Any other task is run as is, so this suits trivial ones</li>
+ *   <li><code>DROP</code> - the cleanup is discarded and counted in
+ *   {@link GuardedObjectStats#getDropped()}, leaking its resource but never blocking finalization.
+ *   A {@link Cleanup} is told, so that it can give back its {@link CleanupBudget} reservation</li>
+ * </ul>
+ *
+ * <p>Tasks rejected once the executor is shut down, and cleanups still set aside when it
+ * terminates, are discarded and counted the same way under either policy.</p>
+ *
+ * <p>The defaults, two to sixteen threads, a queue of 1024 tasks and <code>CALLER_RUNS</code>, can
+ * be changed with <code>-Dreaper.minThreads</code>, <code>-Dreaper.maxThreads</code>,
+ * <code>-Dreaper.queueCapacity</code> and <code>-Dreaper.overflow</code>.</p>
+ *
+ * <p>Reapers are created with {@link #newReaper(String, GuardedObjectStats)}, which returns a
+ * virtual thread per task executor instead when started with <code>-Dreaper.mode=VIRTUAL</code> on
+ * JDK 21 or later. A cleanup blocked on a lock then parks its virtual thread and releases the
+ * carrier, so pending cleanups cost a small heap allocated stack each rather than a pool thread,
+ * and there is no queue to bound. Cleanups must not block while holding a monitor, which would pin
+ * the carrier. There is no single thread mode: a {@link CleanupScheduler} drains every cleanup on
+ * one thread, and a reaper cleanup waiting for a long work call would stall all of them.</p>
+ */
+public final class CleanupExecutor extends ThreadPoolExecutor {
+    public enum Overflow {
+        CALLER_RUNS, DROP
+    }
+
+    public enum Mode {
+        ADAPTIVE, VIRTUAL
+    }
+
+    static final int MIN_THREADS = Integer.getInteger("reaper.minThreads", 2);
+    static final int MAX_THREADS = Integer.getInteger("reaper.maxThreads", 16);
+    static final int QUEUE_CAPACITY = Integer.getInteger("reaper.queueCapacity", 1024);
+    static final Overflow OVERFLOW = Overflow.valueOf(System.getProperty("reaper.overflow", "CALLER_RUNS"));
+    static final Mode MODE = Mode.valueOf(System.getProperty("reaper.mode", "ADAPTIVE"));
+    static final long ADJUST_INTERVAL_MILLIS = Long.getLong("reaper.adjustInterval", 100L);
+    static final long TARGET_LATENCY_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("reaper.targetLatency", 50L));
+
+    private final GuardedObjectStats stats;
+    private final int minThreads;
+    private final ScheduledExecutorService sizer;
+
+    private final ThreadLocal<long[]> started = ThreadLocal.withInitial(() -> new long[1]);
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder cleanupNanos = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+
+    // Cleanups that overflowed and could not run on the caller without blocking
+    private final Queue<Runnable> deferredCleanups = new ConcurrentLinkedQueue<Runnable>();
+
+    /**
+     * A cleanup that may have to wait, for instance for a lock held by a work call, and can also be
+     * attempted without waiting.
+     */
+    public interface Cleanup extends Runnable {
+        /**
+         * Runs the cleanup if it can complete without blocking.
+         *
+         * @return false if nothing was done, because the cleanup would have blocked
+         */
+        boolean tryRun();
+
+        /**
+         * Called instead of running when the <code>DROP</code> policy or a shut down executor
+         * discards the cleanup. The resource leaks, but anything accounted for it elsewhere must be
+         * given back.
+         */
+        void discarded();
+    }
+
+    /**
+     * Creates an executor with the configured defaults, counting dropped cleanups in the given stats.
+     */
+    public CleanupExecutor(String name, GuardedObjectStats stats) {
+        this(name, stats, MIN_THREADS, MAX_THREADS, QUEUE_CAPACITY, OVERFLOW);
+    }
+
+    public CleanupExecutor(String name, GuardedObjectStats stats,
+                           int minThreads, int maxThreads, int queueCapacity, Overflow overflow) {
+        super(minThreads, maxThreads, 1L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), threads(name + "-reaper"));
+        this.stats = stats;
+        this.minThreads = minThreads;
+        setRejectedExecutionHandler(overflow == Overflow.DROP ? new Drop() : new CallerRuns());
+
+        sizer = Executors.newSingleThreadScheduledExecutor(threads(name + "-reaper-sizer"));
+        sizer.scheduleWithFixedDelay(this::adjust,
+                ADJUST_INTERVAL_MILLIS, ADJUST_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates the reaper of a guarded class in the configured mode. Falls back to an adaptive
+     * executor when virtual threads are requested but not available.
+     */
+    public static ExecutorService newReaper(String name, GuardedObjectStats stats) {
+        if (MODE == Mode.VIRTUAL) {
+            ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+            if (virtual != null) {
+                return virtual;
+            }
+            System.err.println("Virtual threads are not available, using an adaptive reaper for " + name);
+        }
+        return new CleanupExecutor(name, stats);
+    }
+
+    /**
+     * Returns <code>Executors.newVirtualThreadPerTaskExecutor()</code>, or null before JDK 21.
+     * Looked up reflectively so the examples compile on older JDKs.
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    // Daemon threads, like the phantom reaper: a reaper that is never shut down must not keep the
+    // JVM alive after the application is done
+    private static ThreadFactory threads(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private long lastCompleted;
+    private long lastCleanupNanos;
+
+    // Only called on the sizer thread
+    private void adjust() {
+        // Cleanups set aside on overflow are resubmitted as soon as the queue has room. Going
+        // through execute() starts a worker if none is running, and discards them after shutdown
+        Runnable r;
+        while (getQueue().remainingCapacity() > 0 && (r = deferredCleanups.poll()) != null) {
+            execute(r);
+        }
+
+        long completed = this.completed.sum();
+        long cleanupNanos = this.cleanupNanos.sum();
+        long tasks = completed - lastCompleted;
+        long averageNanos = tasks == 0 ? 0 : (cleanupNanos - lastCleanupNanos) / tasks;
+        lastCompleted = completed;
+        lastCleanupNanos = cleanupNanos;
+
+        int depth = getQueue().size() + deferredCleanups.size();
+        int core = getCorePoolSize();
+        if (depth > 0 && (depth > core || averageNanos > TARGET_LATENCY_NANOS || tasks == 0)) {
+            // Tasks are waiting and the pool is not keeping up, or every thread is stuck
+            int grown = Math.min(getMaximumPoolSize(), core * 2);
+            if (grown > core) {
+                setCorePoolSize(grown);
+            }
+        } else if (depth == 0 && core > minThreads && getActiveCount() < core) {
+            // Surplus threads exit once idle for the keep alive time
+            setCorePoolSize(core - 1);
+        }
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        started.get()[0] = System.nanoTime();
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        cleanupNanos.add(System.nanoTime() - started.get()[0]);
+        completed.increment();
+    }
+
+    @Override
+    protected void terminated() {
+        sizer.shutdown();
+        discardDeferred();
+    }
+
+    // Nothing is left to run the cleanups set aside on overflow
+    private void discardDeferred() {
+        Runnable r;
+        while ((r = deferredCleanups.poll()) != null) {
+            discard(r);
+        }
+    }
+
+    private void discard(Runnable r) {
+        dropped.increment();
+        if (stats != null) {
+            stats.dropped();
+        }
+        if (r instanceof Cleanup) {
+            ((Cleanup) r).discarded();
+        }
+    }
+
+    /**
+     * Cleanups discarded by the <code>DROP</code> overflow policy, rejected after shutdown, or
+     * still set aside by the <code>CALLER_RUNS</code> policy when the executor terminated.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Cleanups that overflowed and were set aside by the <code>CALLER_RUNS</code> policy, because
+     * they could not run on the caller without blocking.
+     */
+    public long getDeferred() {
+        return deferred.sum();
+    }
+
+    private final class CallerRuns implements RejectedExecutionHandler {
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                discard(r);
+            } else if (!(r instanceof Cleanup)) {
+                r.run();
+            } else if (!((Cleanup) r).tryRun()) {
+                // Blocking here would stall the finalizer thread behind a work call
+                deferred.increment();
+                deferredCleanups.add(r);
+                if (executor.isTerminated()) {
+                    // Terminated since the check above, after the last drain
+                    discardDeferred();
+                }
+            }
+        }
+    }
+
+    private final class Drop implements RejectedExecutionHandler {
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            discard(r);
+        }
+    }
+}
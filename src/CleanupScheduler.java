@@ -0,0 +1,191 @@
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A reaper that runs cleanups on a single drain thread, fed by a lock-free queue.
+ *
+ * <p>Handing a cleanup to a <code>ThreadPoolExecutor</code> takes the lock of its blocking queue,
+ * and may signal a condition, on the finalizer thread. Here producers only swap the tail of a
+ * linked multi-producer single-consumer queue with one atomic exchange and link the previous tail
+ * to the new node. The drain thread is the only consumer, so taking from the head needs no atomic
+ * operation at all. It runs every cleanup it finds linked in one pass, and parks only when it finds
+ * the queue empty, after spinning briefly in case more cleanups follow.</p>
+ *
+ * <p>Before parking, the drain thread sets a volatile flag and looks at the queue once more, and a
+ * producer reads the flag after linking its node, so either the drain thread sees the node or the
+ * producer sees the flag and unparks it. While the drain thread is busy, producers never touch
+ * it.</p>
+ *
+ * <p>Cleanups can also be scheduled as a {@link Task}, which is itself the queue node, so that
+ * scheduling them allocates nothing at all.</p>
+ *
+ * <p>With a single thread, a cleanup that blocks delays every cleanup queued behind it. This suits
+ * cleanups that never block, such as those of {@link SafeFinalizeSyncRWHandoffExample}. It is
+ * deliberately not offered as a reaper mode of {@link CleanupExecutor}, whose cleanups may wait for
+ * a work call to release a lock. The preallocated cleanups of
+ * {@link SafeFinalizeSyncRWInstrumentedExample} only try that lock on the drain thread, and wait
+ * for it on the reaper.</p>
+ */
+public final class CleanupScheduler extends AbstractExecutorService {
+    private static final int SPINS = 200;
+
+    /**
+     * A cleanup that is its own queue node. Scheduling it allocates nothing, so it can be created
+     * together with the guarded object and scheduled from the finalizer thread without producing
+     * any garbage. A task can only be scheduled once, on either a scheduler or a
+     * {@link CleanupBatcher}.
+     */
+    public abstract static class Task {
+        volatile Task next;
+
+        // Number of tasks in a CleanupBatcher batch up to and including this one
+        int depth;
+
+        /**
+         * Runs the cleanup on the drain thread.
+         */
+        protected abstract void runScheduled();
+    }
+
+    private static final class RunnableTask extends Task {
+        private final Runnable runnable;
+
+        RunnableTask(Runnable runnable) {
+            this.runnable = runnable;
+        }
+
+        protected void runScheduled() {
+            runnable.run();
+        }
+    }
+
+    // Producers append at the tail, only the drain thread reads from the head
+    private final AtomicReference<Task> tail;
+    private Task head;
+
+    private final Thread drainer;
+    private volatile boolean parked;
+    private volatile boolean shutdown;
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    public CleanupScheduler(String name) {
+        head = new RunnableTask(null);
+        tail = new AtomicReference<Task>(head);
+        drainer = new Thread(this::drain, name + "-reaper");
+        drainer.start();
+    }
+
+    public void execute(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        schedule(new RunnableTask(task));
+    }
+
+    /**
+     * Queues a task without allocating.
+     */
+    public void schedule(Task task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Cleanup scheduler has been shut down");
+        }
+        tail.getAndSet(task).next = task;
+        if (parked) {
+            LockSupport.unpark(drainer);
+        }
+    }
+
+    // Only called on the drain thread
+    private Task poll() {
+        Task next = head.next;
+        if (next == null) {
+            // Empty, or a producer has swapped the tail but not linked it yet and will unpark us
+            return null;
+        }
+        // The task taken becomes the new stub head, and is only released by the next poll
+        head = next;
+        return next;
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                Task task;
+                while ((task = poll()) != null) {
+                    run(task);
+                }
+                if (shutdown && tail.get() == head) {
+                    return;
+                }
+                if (spin()) {
+                    continue;
+                }
+                parked = true;
+                if (head.next == null && !shutdown) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+            }
+        } finally {
+            terminated.countDown();
+        }
+    }
+
+    /**
+     * Waits briefly for more cleanups before parking, since unparking costs a producer a system call.
+     */
+    private boolean spin() {
+        for (int i = 0; i < SPINS; i++) {
+            if (head.next != null) {
+                return true;
+            }
+            if (i < SPINS / 2) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        return false;
+    }
+
+    private static void run(Task task) {
+        try {
+            task.runScheduled();
+        } catch (Throwable t) {
+            // A failing cleanup must not stop the ones behind it
+            System.err.println("Cleanup failed: " + t);
+            t.printStackTrace();
+        }
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        LockSupport.unpark(drainer);
+    }
+
+    /**
+     * Same as {@link #shutdown()}: cleanups release resources, so those already queued still run.
+     */
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        return Collections.emptyList();
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+}
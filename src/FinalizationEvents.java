@@ -0,0 +1,88 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events for the life cycle of a guarded object.
+ *
+ * <p>Every event carries the id of the guarded object, so a work call, its finalization, the
+ * scheduling of its cleanup and the cleanup itself can be correlated in JMC. The time from the
+ * last work end or from finalization to the end of the cleanup is the unreachable to cleaned
+ * latency, and the queue depth of the cleanup enqueue events charts the reaper backlog.</p>
+ *
+ * <p>Events are only recorded while a recording is running, for example:</p>
+ * <pre>
+ * java -XX:StartFlightRecording=filename=rw.jfr -cp out SafeFinalizeSyncRWInstrumentedExample
+ * jfr print --categories "Finalize Examples" rw.jfr
+ * </pre>
+ *
+ * <p>The finalizer checks {@link #FINALIZE} and {@link #CLEANUP_ENQUEUE} before creating its
+ * events, so that it does not allocate unless they are recorded.</p>
+ */
+final class FinalizationEvents {
+    // Lets the finalizer skip allocating events that are not being recorded
+    static final EventType FINALIZE = EventType.getEventType(Finalize.class);
+    static final EventType CLEANUP_ENQUEUE = EventType.getEventType(CleanupEnqueue.class);
+
+    private FinalizationEvents() {
+    }
+
+    @Name("finalize.examples.Work")
+    @Label("Work")
+    @Description("A pre-finalization work call, from start to end")
+    @Category("Finalize Examples")
+    @StackTrace(false)
+    static final class Work extends Event {
+        @Label("Object Id")
+        long objectId;
+    }
+
+    @Name("finalize.examples.Finalize")
+    @Label("Finalize")
+    @Description("Entry into the finalizer of a guarded object")
+    @Category("Finalize Examples")
+    @StackTrace(false)
+    static final class Finalize extends Event {
+        @Label("Object Id")
+        long objectId;
+    }
+
+    @Name("finalize.examples.CleanupEnqueue")
+    @Label("Cleanup Enqueue")
+    @Description("A cleanup task handed to the reaper")
+    @Category("Finalize Examples")
+    @StackTrace(false)
+    static final class CleanupEnqueue extends Event {
+        @Label("Object Id")
+        long objectId;
+
+        @Label("Queue Depth")
+        @Description("Cleanup tasks handed to the reaper that have not started yet, including this one")
+        int queueDepth;
+    }
+
+    @Name("finalize.examples.Cleanup")
+    @Label("Cleanup")
+    @Description("A cleanup task, from start to end")
+    @Category("Finalize Examples")
+    @StackTrace(false)
+    static final class Cleanup extends Event {
+        @Label("Object Id")
+        long objectId;
+
+        @Label("Queue Time")
+        @Description("Time between being enqueued and starting")
+        @Timespan(Timespan.NANOSECONDS)
+        long queueTime;
+
+        @Label("Write Lock Wait")
+        @Description("Time spent waiting for pending work calls to release the read lock")
+        @Timespan(Timespan.NANOSECONDS)
+        long writeLockWait;
+    }
+}
@@ -0,0 +1,139 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Live, pending and cleaned counts of one guarded class, exported as an MBean.
+ *
+ * <p>A guarded class registers once, holding the result in a static field, and then reports each
+ * step of the life cycle of its instances. The counters are <code>LongAdder</code>s, which stripe
+ * updates across cells under contention, so counting adds no shared contention point to
+ * construction or to work calls. Sums are only computed when the MBean is read.</p>
+ *
+ * <p>A class can not observe its own instances becoming unreachable, only their finalization. The
+ * pending count therefore starts at <code>finalize()</code>, or at the dequeuing of a phantom
+ * reference, and lasts until the cleanup has completed or was dropped. Unreachable instances still
+ * waiting for the finalizer are only visible JVM-wide, through
+ * {@link #getJvmObjectPendingFinalizationCount()}.</p>
+ *
+ * <p>The MBeans are registered as
+ * <code>finalize.examples:type=GuardedObjectStats,name=&lt;class&gt;</code> and can be browsed with
+ * JConsole or JMC.</p>
+ */
+public final class GuardedObjectStats implements GuardedObjectStatsMBean {
+    private final LongAdder created = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+    private final LongAdder finalized = new LongAdder();
+    private final LongAdder pending = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder cleaned = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private GuardedObjectStats() {
+    }
+
+    /**
+     * Creates counters that are not registered, for tools that only read them directly.
+     */
+    static GuardedObjectStats create() {
+        return new GuardedObjectStats();
+    }
+
+    /**
+     * Creates the counters for a guarded class and registers them with the platform MBean server.
+     * Failing to register only loses visibility, so it is reported but not propagated.
+     */
+    public static GuardedObjectStats register(Class<?> type) {
+        GuardedObjectStats stats = create();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(stats,
+                    new ObjectName("finalize.examples:type=GuardedObjectStats,name=" + type.getName()));
+        } catch (JMException e) {
+            System.err.println("Could not register statistics of " + type.getName() + ": " + e);
+        }
+        return stats;
+    }
+
+    public void created() {
+        created.increment();
+    }
+
+    public void closed() {
+        closed.increment();
+    }
+
+    /**
+     * An instance was found unreachable without having been closed, and its cleanup is pending.
+     */
+    public void finalized() {
+        finalized.increment();
+        pending.increment();
+    }
+
+    public void enqueued() {
+        queued.increment();
+    }
+
+    public void dequeued() {
+        queued.decrement();
+    }
+
+    /**
+     * The cleanup on close completed.
+     */
+    public void cleaned() {
+        cleaned.increment();
+    }
+
+    /**
+     * The cleanup of a finalized instance completed.
+     */
+    public void cleanedAfterFinalization() {
+        cleaned.increment();
+        pending.decrement();
+    }
+
+    public void dropped() {
+        queued.decrement();
+        pending.decrement();
+        dropped.increment();
+    }
+
+    public long getCreated() {
+        return created.sum();
+    }
+
+    public long getClosed() {
+        return closed.sum();
+    }
+
+    public long getFinalized() {
+        return finalized.sum();
+    }
+
+    public long getOutstanding() {
+        return created.sum() - closed.sum() - finalized.sum();
+    }
+
+    public long getPending() {
+        return pending.sum();
+    }
+
+    public long getQueued() {
+        return queued.sum();
+    }
+
+    public long getCleaned() {
+        return cleaned.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public int getJvmObjectPendingFinalizationCount() {
+        return ManagementFactory.getMemoryMXBean().getObjectPendingFinalizationCount();
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * Management interface of {@link GuardedObjectStats}.
+ */
+public interface GuardedObjectStatsMBean {
+    /** Instances constructed. */
+    long getCreated();
+
+    /** Instances closed explicitly. */
+    long getClosed();
+
+    /** Instances left to the finalizer, which found them not closed. */
+    long getFinalized();
+
+    /**
+     * Instances neither closed nor finalized yet. These are mostly live, the ones that are already
+     * unreachable and wait for the finalizer can not be told apart, see {@link #getPending()}.
+     */
+    long getOutstanding();
+
+    /** Finalized instances whose cleanup has neither completed nor been dropped yet. */
+    long getPending();
+
+    /** Cleanup tasks scheduled on the reaper that have not started yet. */
+    long getQueued();
+
+    /** Cleanups completed, whether on close or after finalization. */
+    long getCleaned();
+
+    /** Cleanup tasks discarded because the reaper was saturated, each one a leaked resource. */
+    long getDropped();
+
+    /** Objects pending finalization in the whole JVM, from <code>MemoryMXBean</code>. */
+    int getJvmObjectPendingFinalizationCount();
+}
@@ -0,0 +1,113 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reports guarded objects that were left to the finalizer instead of being closed.
+ *
+ * <p>The finalizer of a guarded object is a safety net. When it has to release a resource, the
+ * object leaked, and the interesting question is where it was allocated. Capturing a stack trace
+ * for every instance is far too expensive, so allocation sites are only recorded for a sample:</p>
+ * <ul>
+ *   <li><code>DISABLED</code> - nothing is recorded, leaks are only counted</li>
+ *   <li><code>SAMPLED</code> - one in <code>leak.samplingInterval</code> instances (default 128,
+ *   values below one fall back to it) records its allocation site</li>
+ *   <li><code>PARANOID</code> - every instance records its allocation site</li>
+ * </ul>
+ *
+ * <p>The level is set with <code>-Dleak.level</code>, in any case, and defaults to <code>SAMPLED</code>,
+ * which an unknown level also falls back to. An object
+ * keeps the record returned by {@link #track()} and passes it to {@link #leaked(Class, Throwable)}
+ * when its finalizer finds it was never closed. Unsampled instances carry a null record and cost
+ * one random number at construction.</p>
+ */
+public final class LeakDetector {
+    public enum Level {
+        DISABLED, SAMPLED, PARANOID
+    }
+
+    private static final Level LEVEL = level(System.getProperty("leak.level"));
+    private static final int DEFAULT_SAMPLING_INTERVAL = 128;
+    private static final int SAMPLING_INTERVAL = samplingInterval();
+
+    private static final LongAdder LEAKS = new LongAdder();
+
+    private LeakDetector() {
+    }
+
+    /**
+     * Parses the level once. A typo would otherwise fail the class initialization, and with it the
+     * construction of every guarded object, so it is reported and replaced by the default.
+     */
+    private static Level level(String name) {
+        if (name == null) {
+            return Level.SAMPLED;
+        }
+        try {
+            return Level.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ignoring leak.level=" + name + ", it must be one of "
+                    + Arrays.toString(Level.values()) + ", using " + Level.SAMPLED);
+            return Level.SAMPLED;
+        }
+    }
+
+    /**
+     * Reads the sampling interval once. An interval below one would fail the construction of every
+     * guarded object, so it is reported and replaced by the default.
+     */
+    private static int samplingInterval() {
+        int interval = Integer.getInteger("leak.samplingInterval", DEFAULT_SAMPLING_INTERVAL);
+        if (interval < 1) {
+            System.err.println("Ignoring leak.samplingInterval=" + interval + ", it must be positive, using "
+                    + DEFAULT_SAMPLING_INTERVAL);
+            return DEFAULT_SAMPLING_INTERVAL;
+        }
+        return interval;
+    }
+
+    public static Level level() {
+        return LEVEL;
+    }
+
+    /**
+     * Returns the allocation record for a new guarded object, or null if it is not sampled.
+     */
+    public static Throwable track() {
+        switch (LEVEL) {
+            case PARANOID:
+                return new AllocationRecord();
+            case SAMPLED:
+                return ThreadLocalRandom.current().nextInt(SAMPLING_INTERVAL) == 0 ? new AllocationRecord() : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Called by a finalizer or cleanup task that found its object had never been closed.
+     */
+    public static void leaked(Class<?> type, Throwable allocation) {
+        LEAKS.increment();
+        if (allocation != null) {
+            System.err.println("LEAK: " + type.getName() + " was not closed before being finalized");
+            allocation.printStackTrace();
+        }
+    }
+
+    /**
+     * The number of leaked objects seen so far, sampled or not.
+     */
+    public static long leaks() {
+        return LEAKS.sum();
+    }
+
+    private static final class AllocationRecord extends Throwable {
+        private static final long serialVersionUID = 1L;
+
+        AllocationRecord() {
+            super("Allocated at", null, false, true);
+        }
+    }
+}
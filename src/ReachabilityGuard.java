@@ -0,0 +1,303 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.Reference;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The techniques of the examples, packaged as a reusable guard.
+ *
+ * <p>Instead of the guarded object overriding <code>finalize()</code> itself, it creates a guard
+ * holding its cleanup task, and brackets every pre-finalization method with
+ * {@link #enter()} and {@link #exit()}:</p>
+ *
+ * <pre>
+ * private final ReachabilityGuard guard = ReachabilityGuard.Strategy.ORDERED.create(new CleanupTask(resource));
+ *
+ * public void work() {
+ *     ReachabilityGuard guard = this.guard;
+ *     guard.enter();
+ *     try {
+ *         // use resource
+ *     } finally {
+ *         guard.exit();
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>The guard is the finalizable object, so it is the guard, not its owner, that must stay
+ * reachable until the work completes. Each strategy applies the technique of one of the examples
+ * to the guard, which is why <code>exit()</code> takes no arguments: the field write, monitor or
+ * fence operates on the guard itself, exactly as the examples operate on "this". As with the
+ * cleanup tasks of the examples, the cleanup must not reference the owner in any way.</p>
+ *
+ * <p>An owner that is closed explicitly calls {@link #close()}, which runs the cleanup on the
+ * calling thread and disarms the finalizer. The cleanup runs at most once either way.</p>
+ *
+ * <p>All strategies are final classes with trivial methods. A call site that only ever sees one
+ * strategy is inlined to the same code as the hand-written epilogue. Declaring the guard field
+ * with the concrete strategy type guarantees this regardless of profile.</p>
+ */
+public abstract class ReachabilityGuard {
+    // Shared by close() and the finalizer, whichever comes first
+    final Once cleanup;
+
+    ReachabilityGuard(Runnable cleanup) {
+        this.cleanup = new Once(cleanup);
+    }
+
+    /**
+     * Runs the cleanup now, unless it has already run, leaving nothing for the finalizer to do.
+     * Must not be called while guarded work is in progress, except with {@link ReadWriteGuard},
+     * which waits for it. No work may be started after closing.
+     */
+    public void close() {
+        cleanup.run();
+    }
+
+    /**
+     * Must be called before the guarded work starts.
+     */
+    public void enter() {
+    }
+
+    /**
+     * Must be called in a finally block once the guarded work has completed.
+     */
+    public abstract void exit();
+
+    public enum Strategy {
+        /** The monitor release of {@link SafeFinalizeSyncUnpinnedExample}, see {@link MonitorExitGuard}. */
+        MONITOR_EXIT {
+            public ReachabilityGuard create(Runnable cleanup) {
+                return new MonitorExitGuard(cleanup);
+            }
+        },
+        /** {@link SafeFinalizeSyncRWExample}, see {@link ReadWriteGuard}. */
+        READ_WRITE {
+            public ReachabilityGuard create(Runnable cleanup) {
+                return new ReadWriteGuard(cleanup);
+            }
+        },
+        /** {@link SafeFinalizeVolatileFieldExample}, see {@link VolatileGuard}. */
+        VOLATILE {
+            public ReachabilityGuard create(Runnable cleanup) {
+                return new VolatileGuard(cleanup);
+            }
+        },
+        /** {@link SafeFinalizeVarHandleExample}, see {@link OrderedGuard}. */
+        ORDERED {
+            public ReachabilityGuard create(Runnable cleanup) {
+                return new OrderedGuard(cleanup);
+            }
+        },
+        /** {@link SafeFinalizeReachabilityFenceExample}, see {@link FenceGuard}. */
+        FENCE {
+            public ReachabilityGuard create(Runnable cleanup) {
+                return new FenceGuard(cleanup);
+            }
+        };
+
+        public abstract ReachabilityGuard create(Runnable cleanup);
+    }
+
+    /**
+     * Runs the wrapped cleanup the first time it is run, and does nothing afterwards.
+     */
+    static final class Once implements Runnable {
+        private final Runnable cleanup;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        Once(Runnable cleanup) {
+            this.cleanup = cleanup;
+        }
+
+        public void run() {
+            if (done.compareAndSet(false, true)) {
+                cleanup.run();
+            }
+        }
+
+        boolean isDone() {
+            return done.get();
+        }
+    }
+
+    /**
+     * Passes through the monitor of the guard on exit, and runs the cleanup under the same monitor.
+     *
+     * <p>This is not the technique of {@link SafeFinalizeSyncExample}. Java can not hold a monitor
+     * across method calls, so the work does not run under the monitor: work calls are not
+     * serialized with each other, and the finalizer is held off by reachability alone, not by a held
+     * lock. What the monitor does guarantee is an ordered epilogue, as in
+     * {@link SafeFinalizeSyncUnpinnedExample}. Acquiring it on exit needs the guard, which is
+     * therefore reachable until then, and the release orders the work before the synchronized
+     * finalizer, which can not acquire the monitor earlier. The guarantee is the same as that of the
+     * release write of {@link OrderedGuard}, at the price of an uncontended lock.</p>
+     *
+     * <p>Callers that want the work serialized as in the sync example must hold the monitor for the
+     * whole call themselves, with <code>synchronized (guard)</code>.</p>
+     */
+    public static final class MonitorExitGuard extends ReachabilityGuard {
+        MonitorExitGuard(Runnable cleanup) {
+            super(cleanup);
+        }
+
+        public synchronized void exit() {
+        }
+
+        protected synchronized void finalize() {
+            cleanup.run();
+        }
+    }
+
+    /**
+     * Read lock for the duration of the work, write lock for the cleanup, as in
+     * {@link SafeFinalizeSyncRWExample}. Allows concurrent long-running work.
+     */
+    public static final class ReadWriteGuard extends ReachabilityGuard {
+        private static final ExecutorService REAPER = Executors.newFixedThreadPool(2, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ReachabilityGuard reaper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        ReadWriteGuard(Runnable cleanup) {
+            super(cleanup);
+        }
+
+        public void enter() {
+            ReentrantReadWriteLock lock = this.lock;
+            synchronized (this) {
+                lock.readLock().lock();
+            }
+        }
+
+        public void exit() {
+            lock.readLock().unlock();
+        }
+
+        /**
+         * Waits for the work calls in progress under the write lock, as the reaper would.
+         */
+        public void close() {
+            lock.writeLock().lock();
+            try {
+                cleanup.run();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        protected synchronized void finalize() {
+            if (cleanup.isDone()) {
+                // Closed, no task for the reaper
+                return;
+            }
+            // Delegate to another thread so we do not block the JVM finalizer thread
+            REAPER.execute(new CleanupTask(lock, cleanup));
+        }
+
+        private static class CleanupTask implements Runnable {
+            private final ReentrantReadWriteLock lock;
+            private final Runnable cleanup;
+
+            CleanupTask(ReentrantReadWriteLock lock, Runnable cleanup) {
+                this.lock = lock;
+                this.cleanup = cleanup;
+            }
+
+            public void run() {
+                try {
+                    lock.writeLock().lock();
+                    cleanup.run();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * A volatile increment on exit, as in {@link SafeFinalizeVolatileFieldExample}.
+     */
+    public static final class VolatileGuard extends ReachabilityGuard {
+        public static int STATIC_COUNTER = 0;
+
+        // Initialize with current static field value for an additional optimizer safe-guard
+        private volatile int counter = STATIC_COUNTER;
+
+        VolatileGuard(Runnable cleanup) {
+            super(cleanup);
+        }
+
+        public void exit() {
+            counter++;
+        }
+
+        protected void finalize() {
+            // Copy value to a public static for an additional optimizer safe-guard
+            STATIC_COUNTER = counter;
+            cleanup.run();
+        }
+    }
+
+    /**
+     * A release write of a plain read on exit, as in {@link SafeFinalizeVarHandleExample}. This is
+     * the portable form of the <code>putOrderedInt</code> and <code>lazySet</code> examples.
+     */
+    public static final class OrderedGuard extends ReachabilityGuard {
+        public static int STATIC_COUNTER = 0;
+        private static final VarHandle COUNTER;
+
+        // Initialize with current static field value for an additional optimizer safe-guard
+        private int counter = STATIC_COUNTER;
+
+        static {
+            try {
+                COUNTER = MethodHandles.lookup().findVarHandle(OrderedGuard.class, "counter", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        OrderedGuard(Runnable cleanup) {
+            super(cleanup);
+        }
+
+        public void exit() {
+            COUNTER.setRelease(this, counter + 1);
+        }
+
+        protected void finalize() {
+            // Copy value to a public static for an additional optimizer safe-guard
+            STATIC_COUNTER = (int) COUNTER.getAcquire(this);
+            cleanup.run();
+        }
+    }
+
+    /**
+     * <code>Reference.reachabilityFence</code> on exit, as in
+     * {@link SafeFinalizeReachabilityFenceExample}.
+     */
+    public static final class FenceGuard extends ReachabilityGuard {
+        FenceGuard(Runnable cleanup) {
+            super(cleanup);
+        }
+
+        public void exit() {
+            Reference.reachabilityFence(this);
+        }
+
+        protected void finalize() {
+            cleanup.run();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import java.lang.ref.Cleaner;
+
+/**
+ * A <code>java.lang.ref.Cleaner</code> based variant of {@link SafeFinalizeSyncExample}.
+ *
+ * <p>Instead of overriding <code>finalize()</code>, the cleanup is registered with a dedicated
+ * <code>Cleaner</code>, which runs it on its own reaper thread once the object has become phantom
+ * reachable. This avoids <code>java.lang.ref.Finalizer</code> registration, allows the object to
+ * be reclaimed in a single GC cycle, and keeps cleanup off the shared JVM finalizer thread.</p>
+ *
+ * <p>As with the finalizer version, the work method is synchronized. Note that the JLS rule that
+ * a held lock keeps an object reachable is only stated for finalizers. With a Cleaner, the
+ * ordering instead rests on the monitor exit at the end of the method, which needs
+ * <code>this</code> and therefore keeps it live until the work has completed (HotSpot also
+ * reports locked objects as roots). The cleanup action must not reference the example, and
+ * can not synchronize on it, so any state it needs is passed via construction.</p>
+ *
+ * <p>Closing the example cleans up through the <code>Cleaner.Cleanable</code> returned by the
+ * registration. That unregisters the action before running it, so it runs at most once, whether
+ * the example is closed, closed again or left to the <code>Cleaner</code>. As <code>close()</code>
+ * is synchronized, it waits for a work call in progress. Work methods must not be called after
+ * closing.</p>
+ */
+public final class SafeCleanerSyncExample implements AutoCloseable {
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final Cleaner.Cleanable cleanable;
+
+    SafeCleanerSyncExample() {
+        cleanable = CLEANER.register(this,
+                new CleanupTask(CleanupBudget.shared().reserve(CleanupBudget.RESOURCE_BYTES, 1)));
+    }
+
+    private synchronized void work() throws Exception {
+        System.err.println("Work starts");
+        System.gc();
+        Thread.sleep(10000L);
+        System.err.println("Work complete");
+    }
+
+    public synchronized void close() {
+        cleanable.clean();
+    }
+
+    /**
+     * The cleanup action. It must not reference the outer example class in any way.
+     */
+    private static class CleanupTask implements Runnable {
+        private final CleanupBudget budget;
+
+        CleanupTask(CleanupBudget budget) {
+            this.budget = budget;
+        }
+
+        public void run() {
+            System.err.println("Clean");
+            budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            System.out.println("Run " + (i + 1));
+            new SafeCleanerSyncExample().work();
+            System.gc();
+            Thread.sleep(2000);
+        }
+    }
+}
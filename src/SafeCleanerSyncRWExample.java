@@ -0,0 +1,122 @@
+import java.lang.ref.Cleaner;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A <code>java.lang.ref.Cleaner</code> based variant of {@link SafeFinalizeSyncRWExample}.
+ *
+ * <p>The read/write handshake is unchanged: work methods acquire the read lock while holding the
+ * monitor of <code>this</code>, and the cleanup acquires the write lock before releasing anything.
+ * The difference is that the cleanup is registered with a dedicated <code>Cleaner</code>. Its reaper
+ * thread exists only for this purpose, so it may block on the write lock directly, and the
+ * <code>REAPER</code> executor hand-off of the finalizer version is no longer needed.</p>
+ *
+ * <p>Once the read lock is held, the cleanup can not proceed until the work has completed, whether
+ * or not the example is still reachable. The monitor only needs to keep <code>this</code> live until
+ * the read lock has been acquired.</p>
+ *
+ * <p>An explicit <code>close()</code> runs the cleanup action on the calling thread through its
+ * <code>Cleaner.Cleanable</code>, blocking on the write lock until pending work calls are done. The
+ * cleanable runs the action at most once, so the <code>Cleaner</code> has nothing left to do for a
+ * closed example. Work methods must not be called after closing.</p>
+ */
+public class SafeCleanerSyncRWExample implements AutoCloseable {
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Cleaner.Cleanable cleanable;
+
+    SafeCleanerSyncRWExample() {
+        cleanable = CLEANER.register(this,
+                new CleanupTask(lock, CleanupBudget.shared().reserve(CleanupBudget.RESOURCE_BYTES, 1)));
+    }
+
+    private void work()  {
+        System.err.println("Work starts");
+        ReentrantReadWriteLock lock = this.lock;
+        try {
+            synchronized (this) {
+                lock.readLock().lock();
+            }
+            System.gc();
+            Thread.sleep(10000L);
+            System.err.println("Work complete");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void close() {
+        cleanable.clean();
+    }
+
+    /**
+     * The cleanup action, run on the Cleaner thread.
+     *
+     * <p>It must not reference the outer example class in any way.</p>
+     * <p>Instead, all values including any resources should be passed via construction.</p>
+     */
+    private static class CleanupTask implements Runnable {
+        private final ReentrantReadWriteLock lock;
+        private final CleanupBudget budget;
+
+        CleanupTask(ReentrantReadWriteLock lock, CleanupBudget budget) {
+            this.lock = lock;
+            this.budget = budget;
+        }
+
+        public void run() {
+            try {
+                lock.writeLock().lock();
+                System.err.println("Cleaning up!");
+                budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+     /*
+      * The remaining portion of the example is purely for simulation purposes, and is not
+      * actually part of the avoidance technique.
+      */
+
+    static class SimulateStackCall implements Runnable {
+        private SafeCleanerSyncRWExample safe;
+
+        SimulateStackCall(SafeCleanerSyncRWExample safe) {
+            this.safe = safe;
+        }
+
+        public void run() {
+            // Ensure the object is not heap-reachable from this Runnable
+            SafeCleanerSyncRWExample safe = this.safe;
+            this.safe = null;
+            safe.work();
+
+            // Force a GC in case the reference survived the work invocation
+            System.gc();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            System.out.println("Run " + (i + 1));
+            SafeCleanerSyncRWExample safe = new SafeCleanerSyncRWExample();
+            Thread t1 = new Thread(new SimulateStackCall(safe)), t2 = new Thread(new SimulateStackCall(safe));
+            t1.start(); t2.start();
+            // Safe can now be collected once optimized.
+            t1.join(); t2.join();
+
+            t1 = null;
+            t2 = null;
+            safe = null;
+
+            // Force GC in case the work methods were not fully optimized
+            System.gc();
+            Thread.sleep(2000);
+        }
+    }
+}
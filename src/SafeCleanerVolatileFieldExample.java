@@ -0,0 +1,78 @@
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+
+/**
+ * A <code>java.lang.ref.Cleaner</code> based variant of {@link SafeFinalizeVolatileFieldExample}.
+ *
+ * <p>The finalizer variant keeps the volatile write alive by copying the field to a public static
+ * field in <code>finalize()</code>. A cleanup action can not read the field, since a phantom
+ * reference never returns its referent, and registering with the <code>Cleaner</code> creates no
+ * happens-before edge from the work method to the cleanup. Nothing ever observes the write, so the
+ * optimizer may eliminate it together with the last use of "this". The work method therefore ends
+ * with <code>Reference.reachabilityFence(this)</code>, which keeps the object strongly reachable
+ * until the work has completed.</p>
+ *
+ * <p>Only the fence matters. The increment is kept so that the epilogue can be compared with the
+ * finalizer variant, and removing it would not make the example any less safe.</p>
+ *
+ * <p>Closing the example runs the cleanup action right away through its
+ * <code>Cleaner.Cleanable</code>, which also unregisters it, so repeated calls and the
+ * <code>Cleaner</code> find nothing left to do. Work methods must not be called after closing.</p>
+ */
+public final class SafeCleanerVolatileFieldExample implements AutoCloseable {
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final Cleaner.Cleanable cleanable;
+
+    private volatile int counter;
+
+    SafeCleanerVolatileFieldExample() {
+        cleanable = CLEANER.register(this,
+                new CleanupTask(CleanupBudget.shared().reserve(CleanupBudget.RESOURCE_BYTES, 1)));
+    }
+
+    public void work() throws Exception {
+        try {
+            System.err.println("Work starting");
+            System.gc();
+
+            // Do some work here, potentially blocking (simulate with sleep)
+            Thread.sleep(10000L);
+            System.err.println("Work completed");
+        } finally {
+            // Dead weight, kept for comparison with the finalizer variant
+            counter++;
+            // The only thing keeping "this" reachable until here
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    public void close() {
+        cleanable.clean();
+    }
+
+    /**
+     * The cleanup action. It must not reference the outer example class in any way.
+     */
+    private static class CleanupTask implements Runnable {
+        private final CleanupBudget budget;
+
+        CleanupTask(CleanupBudget budget) {
+            this.budget = budget;
+        }
+
+        public void run() {
+            System.err.println("Clean");
+            budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            System.out.println("Run " + (i + 1));
+            new SafeCleanerVolatileFieldExample().work();
+            System.gc();
+            Thread.sleep(2000);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+
+import sun.misc.Unsafe;
+
+/**
+ * A <code>java.lang.ref.Cleaner</code> based variant of
+ * {@link SafeFinalizeVolatileFieldUsingUnsafeExample}.
+ *
+ * <p>The cleanup action can not read the field, so nothing observes the ordered write at the end
+ * of the work method, and the optimizer may eliminate it together with the last use of "this".
+ * Unlike the finalizer copy to a public static field, registering with the <code>Cleaner</code>
+ * does not make the write observable: a phantom reference never returns its referent. The work
+ * method therefore ends with <code>Reference.reachabilityFence(this)</code>.</p>
+ *
+ * <p>The fence alone keeps the example reachable. The ordered write no longer contributes
+ * anything, and only remains to show what the epilogue of the finalizer variant turns into.</p>
+ *
+ * <p>The example can be closed, which cleans up on the calling thread through the
+ * <code>Cleaner.Cleanable</code> of the registration. The action runs at most once, however often
+ * the example is closed and whether or not it later becomes phantom reachable. Work methods must
+ * not be called after closing.</p>
+ */
+public final class SafeCleanerVolatileFieldUsingUnsafeExample implements AutoCloseable {
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final Cleaner.Cleanable cleanable;
+
+    private static Unsafe unsafe;
+    private static long counterOffset;
+
+    volatile int counter;
+
+
+    static {
+        Field field = null;
+        try {
+            field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = (Unsafe) field.get(null);
+            field = SafeCleanerVolatileFieldUsingUnsafeExample.class.getDeclaredField("counter");
+            counterOffset = unsafe.objectFieldOffset(field);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    SafeCleanerVolatileFieldUsingUnsafeExample() {
+        cleanable = CLEANER.register(this,
+                new CleanupTask(CleanupBudget.shared().reserve(CleanupBudget.RESOURCE_BYTES, 1)));
+    }
+
+    public void work() throws Exception {
+        try {
+            System.err.println("Work starting");
+            System.gc();
+
+            // Do some work here, potentially blocking (simulate with sleep)
+            Thread.sleep(10000L);
+            System.err.println("Work completed");
+        } finally {
+            // Unobserved, so it no longer orders anything, see the class comment
+            unsafe.putOrderedInt(this, counterOffset, counter + 1);
+            // Keeps "this" reachable until the work is done
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    public void close() {
+        cleanable.clean();
+    }
+
+    /**
+     * The cleanup action. It must not reference the outer example class in any way.
+     */
+    private static class CleanupTask implements Runnable {
+        private final CleanupBudget budget;
+
+        CleanupTask(CleanupBudget budget) {
+            this.budget = budget;
+        }
+
+        public void run() {
+            System.err.println("Clean");
+            budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            System.out.println("Run " + (i + 1));
+            new SafeCleanerVolatileFieldUsingUnsafeExample().work();
+            System.gc();
+            Thread.sleep(2000);
+        }
+    }
+
+}
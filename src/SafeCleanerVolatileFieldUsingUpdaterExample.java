@@ -0,0 +1,80 @@
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A <code>java.lang.ref.Cleaner</code> based variant of
+ * {@link SafeFinalizeVolatileFieldUsingUpdaterExample}.
+ *
+ * <p>The cleanup action can not read the field, so nothing observes the lazy write at the end of
+ * the work method, and the optimizer may eliminate it together with the last use of "this".
+ * Unlike the finalizer copy to a public static field, registering with the <code>Cleaner</code>
+ * does not make the write observable: a phantom reference never returns its referent. The work
+ * method therefore ends with <code>Reference.reachabilityFence(this)</code>.</p>
+ *
+ * <p>It is the fence that keeps the example reachable; the lazy write is left in place only for
+ * comparison with the finalizer variant and could be dropped without loss of safety.</p>
+ *
+ * <p><code>close()</code> cleans up immediately by invoking the <code>Cleaner.Cleanable</code> of
+ * the registration, which runs the action only the first time it is invoked. Work methods must not
+ * be called after closing.</p>
+ */
+public final class SafeCleanerVolatileFieldUsingUpdaterExample implements AutoCloseable {
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final Cleaner.Cleanable cleanable;
+
+    private static AtomicIntegerFieldUpdater<SafeCleanerVolatileFieldUsingUpdaterExample>
+            updater = AtomicIntegerFieldUpdater.newUpdater(SafeCleanerVolatileFieldUsingUpdaterExample.class, "counter");
+    private volatile int counter;
+
+    SafeCleanerVolatileFieldUsingUpdaterExample() {
+        cleanable = CLEANER.register(this,
+                new CleanupTask(CleanupBudget.shared().reserve(CleanupBudget.RESOURCE_BYTES, 1)));
+    }
+
+    public void work() throws Exception {
+        try {
+            System.err.println("Work starting");
+            System.gc();
+
+            // Do some work here, potentially blocking (simulate with sleep)
+            Thread.sleep(10000L);
+            System.err.println("Work completed");
+        } finally {
+            // No longer part of the technique, see the class comment
+            updater.lazySet(this, counter + 1);
+            // What actually keeps "this" reachable
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    public void close() {
+        cleanable.clean();
+    }
+
+    /**
+     * The cleanup action. It must not reference the outer example class in any way.
+     */
+    private static class CleanupTask implements Runnable {
+        private final CleanupBudget budget;
+
+        CleanupTask(CleanupBudget budget) {
+            this.budget = budget;
+        }
+
+        public void run() {
+            System.err.println("Clean");
+            budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            System.out.println("Run " + (i + 1));
+            new SafeCleanerVolatileFieldUsingUpdaterExample().work();
+            System.gc();
+            Thread.sleep(2000);
+        }
+    }
+}
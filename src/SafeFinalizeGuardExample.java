@@ -0,0 +1,63 @@
+/**
+ * A safe finalize example using {@link ReachabilityGuard}.
+ *
+ * <p>The example itself has no finalizer. Its cleanup is held by the guard, and the work method
+ * brackets the work with <code>enter()</code> and <code>exit()</code>. The strategy can be chosen
+ * on the command line, and defaults to <code>ORDERED</code>.</p>
+ *
+ * <p>Closing the example closes the guard, which runs the cleanup at once and disarms its
+ * finalizer. Work methods must not be called after closing.</p>
+ */
+public final class SafeFinalizeGuardExample implements AutoCloseable {
+    private final ReachabilityGuard guard;
+
+    SafeFinalizeGuardExample(ReachabilityGuard.Strategy strategy) {
+        guard = strategy.create(new CleanupTask(CleanupBudget.shared().reserve(CleanupBudget.RESOURCE_BYTES, 1)));
+    }
+
+    public void work() throws Exception {
+        ReachabilityGuard guard = this.guard;
+        guard.enter();
+        try {
+            System.err.println("Work starting");
+            System.gc();
+
+            // Do some work here, potentially blocking (simulate with sleep)
+            Thread.sleep(10000L);
+            System.err.println("Work completed");
+        } finally {
+            guard.exit();
+        }
+    }
+
+    public void close() {
+        guard.close();
+    }
+
+    /**
+     * The cleanup task. It must not reference the outer example class in any way.
+     */
+    private static class CleanupTask implements Runnable {
+        private final CleanupBudget budget;
+
+        CleanupTask(CleanupBudget budget) {
+            this.budget = budget;
+        }
+
+        public void run() {
+            System.err.println("Cleaning up!");
+            budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ReachabilityGuard.Strategy strategy = args.length > 0
+                ? ReachabilityGuard.Strategy.valueOf(args[0]) : ReachabilityGuard.Strategy.ORDERED;
+        for (int i = 0; i < 2; i++) {
+            System.out.println("Run " + (i + 1) + " using " + strategy);
+            new SafeFinalizeGuardExample(strategy).work();
+            System.gc();
+            Thread.sleep(2000);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import java.lang.ref.Reference;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A safe finalize example that uses <code>java.lang.ref.Reference.reachabilityFence</code>.
+ *
+ * <p>Available since Java 9, the fence is the supported way of expressing what the volatile,
+ * lazy set and unsafe examples achieve through a field write: the object is strongly reachable
+ * at least until the fence is executed, and the fence is not reordered with the preceding
+ * work. Placing it in a finally block covers every exit from the work method.</p>
+ *
+ * <p>Unlike the field write techniques, there is no need for a field, or for copying it to a
+ * public static during finalization, since the fence can not be optimized away. It is also not
+ * a memory barrier; once compiled, it only keeps the reference alive in the frame up to that
+ * point, so the epilogue is expected to cost nothing per call.</p>
+ *
+ * <p>An explicit <code>close()</code> releases the resource and leaves the finalizer nothing to do.
+ * Whichever caller wins the compare and set on the closed flag does the release, so closing is
+ * idempotent. Work methods must not be called after closing.</p>
+ */
+public final class SafeFinalizeReachabilityFenceExample implements AutoCloseable {
+    // Volatile, as the finalizer is not ordered after close() otherwise
+    private volatile int closed;
+
+    // Holds the reservation of the resource until close() or the finalizer releases it
+    private final CleanupBudget budget;
+
+    private static final AtomicIntegerFieldUpdater<SafeFinalizeReachabilityFenceExample> CLOSED =
+            AtomicIntegerFieldUpdater.newUpdater(SafeFinalizeReachabilityFenceExample.class, "closed");
+
+    public SafeFinalizeReachabilityFenceExample() {
+        // Reserved before the constructor of Object registers the finalizer, see CleanupBudget
+        this(CleanupBudget.shared().reserve(CleanupBudget.RESOURCE_BYTES, 1));
+    }
+
+    private SafeFinalizeReachabilityFenceExample(CleanupBudget budget) {
+        this.budget = budget;
+    }
+
+    public void work() throws Exception {
+        try {
+            System.err.println("Work starting");
+            System.gc();
+
+            // Do some work here, potentially blocking (simulate with sleep)
+            Thread.sleep(10000L);
+            System.err.println("Work completed");
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    public void close() {
+        if (CLOSED.compareAndSet(this, 0, 1)) {
+            System.err.println("Close");
+            budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+        }
+    }
+
+    protected void finalize() throws Throwable {
+        super.finalize();
+        if (closed != 0) {
+            // Nothing left to release
+            return;
+        }
+        System.err.println("Finalize");
+        budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            System.out.println("Run " + (i + 1));
+            new SafeFinalizeReachabilityFenceExample().work();
+            System.gc();
+            Thread.sleep(2000);
+        }
+    }
+}
@@ -12,8 +12,35 @@
  * until after all locks on the object are released, and at that point there is nothing
  * to block on. Therefore its safe to have potentially long running or blocking
  * pre-finalize work method calls.
+ *
+ * The example can also be closed explicitly, which releases the resource immediately
+ * and disarms the finalizer, so that it no longer has anything to do. Work methods
+ * must not be called after closing.
+ * If the finalizer finds the example was never closed, it reports the leak to the
+ * {@link LeakDetector}. Construction, close and finalization are counted per class in
+ * {@link GuardedObjectStats}.
  */
-public final class SafeFinalizeSyncExample {
+public final class SafeFinalizeSyncExample implements AutoCloseable {
+    private boolean closed;
+
+    // Allocation site, only recorded for sampled instances
+    private final Throwable allocation = LeakDetector.track();
+
+    // Holds the reservation of the resource until it is released
+    private final CleanupBudget budget;
+
+    private static final GuardedObjectStats STATS =
+            GuardedObjectStats.register(SafeFinalizeSyncExample.class);
+
+    public SafeFinalizeSyncExample() {
+        // Reserved before the constructor of Object registers the finalizer, see CleanupBudget
+        this(CleanupBudget.shared().reserve(CleanupBudget.RESOURCE_BYTES, 1));
+    }
+
+    private SafeFinalizeSyncExample(CleanupBudget budget) {
+        this.budget = budget;
+        STATS.created();
+    }
 
     private synchronized void work() throws Exception {
         System.err.println("Work starts");
@@ -22,8 +49,26 @@ public final class SafeFinalizeSyncExample {
         System.err.println("Work complete");
     }
 
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            System.err.println("Close");
+            STATS.closed();
+            budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+            STATS.cleaned();
+        }
+    }
+
     protected synchronized void finalize() {
+        if (closed) {
+            // Already released, nothing for the safety net to do
+            return;
+        }
+        LeakDetector.leaked(getClass(), allocation);
+        STATS.finalized();
         System.err.println("Finalize");
+        budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+        STATS.cleanedAfterFinalization();
     }
 
     public static void main(String[] args) throws Exception {
@@ -14,11 +14,34 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  *
  * <p>In order to prevent blocking the finalizer thread, the finalizer needs to push the
  * task to another thread which may block. </p>
+ *
+ * <p>Closing the example explicitly runs the cleanup on the calling thread, waiting for pending
+ * work calls, and disarms the finalizer so that nothing is scheduled on the reaper. Work methods
+ * must not be called after closing. The resource is accounted for in the {@link CleanupBudget}
+ * until the cleanup task has released it.</p>
+ *
+ * <p>{@link SafeFinalizeSyncRWInstrumentedExample} applies the same technique with flight recorder
+ * events, statistics, leak reports and a tunable reaper.</p>
  */
-public class SafeFinalizeSyncRWExample {
+public class SafeFinalizeSyncRWExample implements AutoCloseable {
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
-    private static ExecutorService REAPER = Executors.newFixedThreadPool(2);
+    // Guarded by the monitor, shared with the finalizer
+    private boolean closed;
+
+    // Holds the reservation of the resource until the cleanup task releases it
+    private final CleanupBudget budget;
+
+    private static final ExecutorService REAPER = Executors.newFixedThreadPool(2);
+
+    public SafeFinalizeSyncRWExample() {
+        // Reserved before the constructor of Object registers the finalizer, see CleanupBudget
+        this(CleanupBudget.shared().reserve(CleanupBudget.RESOURCE_BYTES, 1));
+    }
+
+    private SafeFinalizeSyncRWExample(CleanupBudget budget) {
+        this.budget = budget;
+    }
 
     private void work()  {
         System.err.println("Work starts");
@@ -46,26 +69,43 @@ public class SafeFinalizeSyncRWExample {
      */
     private static class CleanupTask implements Runnable {
         private final ReentrantReadWriteLock lock;
+        private final CleanupBudget budget;
 
-        CleanupTask(ReentrantReadWriteLock lock) {
+        CleanupTask(ReentrantReadWriteLock lock, CleanupBudget budget) {
             this.lock = lock;
+            this.budget = budget;
         }
 
         public void run() {
             try {
                 lock.writeLock().lock();
                 System.err.println("Cleaning up!");
+                budget.release(CleanupBudget.RESOURCE_BYTES, 1);
             } finally {
                 lock.writeLock().unlock();
             }
         }
     }
 
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        new CleanupTask(lock, budget).run();
+    }
+
     protected synchronized void finalize() {
+        if (closed) {
+            // Already cleaned up, nothing to schedule
+            return;
+        }
         System.err.println("Finalize scheduling clean-up");
 
         // Delegate to another thread so we do not block the JVM finalizer thread
-        REAPER.execute(new CleanupTask(lock));
+        REAPER.execute(new CleanupTask(lock, budget));
     }
 
      /*
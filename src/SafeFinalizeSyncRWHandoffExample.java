@@ -0,0 +1,193 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A variant of {@link SafeFinalizeSyncRWExample} where the cleanup never blocks a reaper thread.
+ *
+ * <p>In the original example the cleanup task parks a <code>REAPER</code> thread on the write lock
+ * until every pending work call has completed. With a fixed pool of two threads, two long running
+ * work calls are enough to stall every other cleanup in the process.</p>
+ *
+ * <p>Here the cleanup only ever tries the write lock. If a work call still holds the read lock, the
+ * cleanup is marked pending and the reaper thread moves on. Work calls are counted alongside the
+ * read lock, and the call whose exit brings the count to zero checks the mark. If set, the object
+ * has been finalized and no further call can start, so this is the last reader: it hands the
+ * cleanup back to the reaper, where it now succeeds. The pre-finalization ordering is unchanged: the
+ * read lock is acquired while holding the monitor, and cleanup only happens under the write
+ * lock.</p>
+ *
+ * <p>There is no lost wake-up: the reaper marks the cleanup pending before trying the lock, and a
+ * reader checks the mark after releasing the lock and leaving the count, so the last reader
+ * observes any mark set while it or an earlier reader still held the lock. Since several threads
+ * may try, the cleanup itself is guarded to run exactly once.</p>
+ *
+ * <p>As no cleanup ever waits, the reaper is a {@link CleanupScheduler}, whose single drain thread
+ * takes cleanups from a lock-free queue, rather than a pool. Once it has been shut down, the last
+ * reader runs the cleanup itself, which can not block as nobody else holds the lock any more.</p>
+ *
+ * <p>Closing the example is the one place that waits for the write lock, on the calling thread
+ * rather than the reaper. It goes through the same run-once guard, and a finalizer that finds the
+ * cleanup done hands nothing to the reaper. Work methods must not be called after closing.</p>
+ */
+public class SafeFinalizeSyncRWHandoffExample implements AutoCloseable {
+    // Carries the lock, and the reservation of the resource until the cleanup releases it
+    private final Cleanup cleanup;
+
+    // Cleanups never block, so a single drain thread keeps up with any number of them
+    private static ExecutorService REAPER = new CleanupScheduler("SafeFinalizeSyncRWHandoffExample");
+
+    public SafeFinalizeSyncRWHandoffExample() {
+        // Reserved before the constructor of Object registers the finalizer, see CleanupBudget
+        this(CleanupBudget.shared().reserve(CleanupBudget.RESOURCE_BYTES, 1));
+    }
+
+    private SafeFinalizeSyncRWHandoffExample(CleanupBudget budget) {
+        cleanup = new Cleanup(budget);
+    }
+
+    private void work()  {
+        System.err.println("Work starts");
+        Cleanup cleanup = this.cleanup;
+        try {
+            synchronized (this) {
+                cleanup.readers.incrementAndGet();
+                cleanup.lock.readLock().lock();
+            }
+            System.gc();
+            Thread.sleep(10000L);
+            System.err.println("Work complete");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            cleanup.lock.readLock().unlock();
+            if (cleanup.readers.decrementAndGet() == 0 && cleanup.pending) {
+                // The cleanup could not proceed while we were reading, and we are the last reader
+                cleanup.handOff();
+            }
+        }
+    }
+
+    /**
+     * The separate cleanup task.
+     *
+     * <p>It must not reference the outer example class in any way.</p>
+     * <p>Instead, all values including any resources should be passed via construction.</p>
+     */
+    private static class Cleanup implements Runnable {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // Work calls holding or about to acquire the read lock
+        final AtomicInteger readers = new AtomicInteger();
+        volatile boolean pending;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private final CleanupBudget budget;
+
+        Cleanup(CleanupBudget budget) {
+            this.budget = budget;
+        }
+
+        public void run() {
+            // Mark before trying, so a reader releasing concurrently is guaranteed to see it
+            pending = true;
+            if (lock.writeLock().tryLock()) {
+                try {
+                    release();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+
+        /**
+         * Called by close(), which may block until the work calls in progress are done.
+         */
+        void close() {
+            lock.writeLock().lock();
+            try {
+                release();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        // Called holding the write lock
+        private void release() {
+            if (done.compareAndSet(false, true)) {
+                System.err.println("Cleaning up!");
+                budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+            }
+        }
+
+        /**
+         * Called by the last reader once the cleanup has failed to get the write lock.
+         */
+        void handOff() {
+            try {
+                REAPER.execute(this);
+            } catch (RejectedExecutionException e) {
+                // The reaper has been shut down, and with no reader left the lock is free
+                run();
+            }
+        }
+    }
+
+    public void close() {
+        cleanup.close();
+    }
+
+    protected synchronized void finalize() {
+        if (cleanup.done.get()) {
+            // Closed, nothing to hand to the reaper
+            return;
+        }
+        System.err.println("Finalize scheduling clean-up");
+
+        // Delegate to another thread so we do not block the JVM finalizer thread
+        REAPER.execute(cleanup);
+    }
+
+     /*
+      * The remaining portion of the example is purely for simulation purposes, and is not
+      * actually part of the avoidance technique.
+      */
+
+    static class SimulateStackCall implements Runnable {
+        private SafeFinalizeSyncRWHandoffExample safe;
+
+        SimulateStackCall(SafeFinalizeSyncRWHandoffExample safe) {
+            this.safe = safe;
+        }
+
+        public void run() {
+            // Ensure the object is not heap-reachable from this Runnable
+            SafeFinalizeSyncRWHandoffExample safe = this.safe;
+            this.safe = null;
+            safe.work();
+
+            // Force a GC in case the reference survived the work invocation
+            System.gc();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            System.out.println("Run " + (i + 1));
+            SafeFinalizeSyncRWHandoffExample safe = new SafeFinalizeSyncRWHandoffExample();
+            Thread t1 = new Thread(new SimulateStackCall(safe)), t2 = new Thread(new SimulateStackCall(safe));
+            t1.start(); t2.start();
+            // Safe can now be collected once optimized.
+            t1.join(); t2.join();
+
+            t1 = null;
+            t2 = null;
+            safe = null;
+
+            // Force GC in case the work methods were not fully optimized
+            System.gc();
+            Thread.sleep(2000);
+        }
+        REAPER.shutdown();
+    }
+}
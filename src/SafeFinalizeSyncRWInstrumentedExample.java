@@ -0,0 +1,288 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A variant of {@link SafeFinalizeSyncRWExample} with the instrumentation and reaper tuning that a
+ * guarded class in production would carry. The handshake is the same: the read lock is acquired
+ * while holding the monitor, which the finalizer also holds, and the cleanup task takes the write
+ * lock on another thread.
+ *
+ * <p>The reaper is a {@link CleanupExecutor}, which adds threads while cleanups back up behind long
+ * work calls, and applies an overflow policy once its bounded queue is full. Alternatively each
+ * cleanup can run on its own virtual thread, which suits a task that spends most of its time
+ * waiting for the write lock.</p>
+ *
+ * <p>With <code>-Dreaper.preallocate=true</code> the cleanup task is created together with the
+ * object, and the finalizer schedules it on a {@link CleanupScheduler} whose queue links the tasks
+ * themselves, so finalization allocates nothing while the heap may already be under pressure. The
+ * drain thread of the scheduler only tries the write lock, and passes the cleanup on to the reaper
+ * when a work call is still in progress. Adding <code>-Dreaper.batchSize=n</code> schedules them on
+ * a {@link CleanupBatcher} instead, which wakes its drain thread once for up to n cleanups.</p>
+ *
+ * <p>Closing and the {@link CleanupBudget} reservation work as in the original example. A finalizer
+ * that finds the example still open reports a leak to the {@link LeakDetector} before scheduling
+ * the cleanup, and {@link GuardedObjectStats} counts the cleanups queued on the reaper and those
+ * still pending after finalization.</p>
+ *
+ * <p>Work calls, finalization, cleanup scheduling and the cleanup itself are recorded as
+ * {@link FinalizationEvents} for JDK Flight Recorder, correlated by an object id, in place of the
+ * messages the original example prints.</p>
+ */
+public class SafeFinalizeSyncRWInstrumentedExample implements AutoCloseable {
+    private static final AtomicLong IDS = new AtomicLong();
+
+    private static final boolean PREALLOCATE = Boolean.getBoolean("reaper.preallocate");
+    private static final int BATCH_SIZE = Integer.getInteger("reaper.batchSize", 0);
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Correlates the flight recorder events of this object
+    private final long id = IDS.incrementAndGet();
+
+    // Guarded by the monitor, shared with the finalizer
+    private boolean closed;
+
+    // Allocation site, only recorded for sampled instances
+    private final Throwable allocation = LeakDetector.track();
+
+    // Holds the reservation of the resource until the cleanup task releases it
+    private final CleanupBudget budget;
+
+    // Created up front when preallocating, so that the finalizer does not allocate
+    private final CleanupTask cleanup;
+
+    private static final String NAME = SafeFinalizeSyncRWInstrumentedExample.class.getSimpleName();
+
+    private static final GuardedObjectStats STATS =
+            GuardedObjectStats.register(SafeFinalizeSyncRWInstrumentedExample.class);
+
+    // Grows with the cleanup backlog, or runs each cleanup on a virtual thread, see CleanupExecutor
+    private static final ExecutorService REAPER =
+            CleanupExecutor.newReaper(NAME, STATS);
+
+    // Takes preallocated cleanups from the finalizer without allocating a queue node
+    private static final CleanupScheduler SCHEDULER =
+            PREALLOCATE && BATCH_SIZE == 0 ? new CleanupScheduler(NAME) : null;
+
+    // Or collects them into batches, waking its drain thread once per batch
+    private static final CleanupBatcher BATCHER =
+            PREALLOCATE && BATCH_SIZE > 0 ? new CleanupBatcher(NAME, BATCH_SIZE) : null;
+
+    public SafeFinalizeSyncRWInstrumentedExample() {
+        // Reserved before the constructor of Object registers the finalizer, see CleanupBudget
+        this(CleanupBudget.shared().reserve(CleanupBudget.RESOURCE_BYTES, 1));
+    }
+
+    private SafeFinalizeSyncRWInstrumentedExample(CleanupBudget budget) {
+        this.budget = budget;
+        cleanup = PREALLOCATE ? new CleanupTask(lock, id, budget, true) : null;
+        STATS.created();
+    }
+
+    private void work()  {
+        FinalizationEvents.Work event = new FinalizationEvents.Work();
+        event.begin();
+        ReentrantReadWriteLock lock = this.lock;
+        // Read up front, a use of "this" at the end would keep it reachable regardless of the lock
+        long id = this.id;
+        try {
+            synchronized (this) {
+                lock.readLock().lock();
+            }
+            System.gc();
+            Thread.sleep(10000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.readLock().unlock();
+            event.objectId = id;
+            event.commit();
+        }
+    }
+
+
+    /**
+     * The separate cleanup task.
+     *
+     * <p>It must not reference the outer example class in any way.</p>
+     * <p>Instead, all values including any resources should be passed via construction.</p>
+     */
+    private static class CleanupTask extends CleanupScheduler.Task implements CleanupExecutor.Cleanup {
+        private final ReentrantReadWriteLock lock;
+        private final long id;
+        private final CleanupBudget budget;
+        private final boolean scheduled;
+        private long enqueued = System.nanoTime();
+
+        CleanupTask(ReentrantReadWriteLock lock, long id, CleanupBudget budget, boolean scheduled) {
+            this.lock = lock;
+            this.id = id;
+            this.budget = budget;
+            this.scheduled = scheduled;
+        }
+
+        public void run() {
+            if (scheduled) {
+                STATS.dequeued();
+            }
+            FinalizationEvents.Cleanup event = new FinalizationEvents.Cleanup();
+            event.begin();
+            long start = System.nanoTime();
+            lock.writeLock().lock();
+            clean(event, start);
+        }
+
+        /**
+         * Cleans up only if no work call is in progress. Used where blocking is not allowed: on the
+         * drain thread of the scheduler, and on the finalizer thread when the reaper overflows.
+         */
+        public boolean tryRun() {
+            long start = System.nanoTime();
+            if (!lock.writeLock().tryLock()) {
+                return false;
+            }
+            if (scheduled) {
+                STATS.dequeued();
+            }
+            FinalizationEvents.Cleanup event = new FinalizationEvents.Cleanup();
+            event.begin();
+            clean(event, start);
+            return true;
+        }
+
+        /**
+         * Dropped by a saturated reaper. The lock and the resource are abandoned, but the
+         * reservation must not keep holding back allocation forever.
+         */
+        public void discarded() {
+            budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+        }
+
+        /**
+         * Runs a preallocated cleanup on the single drain thread of the scheduler, which must not
+         * block. If a work call is still in progress, the cleanup waits for it on the reaper instead.
+         */
+        protected void runScheduled() {
+            if (!tryRun()) {
+                REAPER.execute(this);
+            }
+        }
+
+        // Called holding the write lock, which it releases
+        private void clean(FinalizationEvents.Cleanup event, long start) {
+            try {
+                event.writeLockWait = System.nanoTime() - start;
+                budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+                if (scheduled) {
+                    STATS.cleanedAfterFinalization();
+                } else {
+                    STATS.cleaned();
+                }
+            } finally {
+                lock.writeLock().unlock();
+                event.objectId = id;
+                event.queueTime = start - enqueued;
+                event.commit();
+            }
+        }
+    }
+
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        STATS.closed();
+        new CleanupTask(lock, id, budget, false).run();
+    }
+
+    protected synchronized void finalize() {
+        if (FinalizationEvents.FINALIZE.isEnabled()) {
+            FinalizationEvents.Finalize event = new FinalizationEvents.Finalize();
+            event.objectId = id;
+            event.commit();
+        }
+        if (closed) {
+            // Already cleaned up, nothing to schedule
+            return;
+        }
+        LeakDetector.leaked(getClass(), allocation);
+        STATS.finalized();
+
+        // Delegate to another thread so we do not block the JVM finalizer thread
+        STATS.enqueued();
+        if (cleanup != null) {
+            cleanup.enqueued = System.nanoTime();
+            if (BATCHER != null) {
+                BATCHER.schedule(cleanup);
+            } else {
+                SCHEDULER.schedule(cleanup);
+            }
+        } else {
+            REAPER.execute(new CleanupTask(lock, id, budget, true));
+        }
+
+        if (FinalizationEvents.CLEANUP_ENQUEUE.isEnabled()) {
+            FinalizationEvents.CleanupEnqueue enqueue = new FinalizationEvents.CleanupEnqueue();
+            enqueue.objectId = id;
+            enqueue.queueDepth = (int) STATS.getQueued();
+            enqueue.commit();
+        }
+    }
+
+     /*
+      * The remaining portion of the example is purely for simulation purposes, and is not
+      * actually part of the avoidance technique.
+      */
+
+    static class SimulateStackCall implements Runnable {
+        private SafeFinalizeSyncRWInstrumentedExample safe;
+
+        SimulateStackCall(SafeFinalizeSyncRWInstrumentedExample safe) {
+            this.safe = safe;
+        }
+
+        public void run() {
+            // Ensure the object is not heap-reachable from this Runnable
+            SafeFinalizeSyncRWInstrumentedExample safe = this.safe;
+            this.safe = null;
+            safe.work();
+
+            // Force a GC in case the reference survived the work invocation
+            System.gc();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            System.out.println("Run " + (i + 1));
+            SafeFinalizeSyncRWInstrumentedExample safe = new SafeFinalizeSyncRWInstrumentedExample();
+            Thread t1 = new Thread(new SimulateStackCall(safe)), t2 = new Thread(new SimulateStackCall(safe));
+            t1.start(); t2.start();
+            // Safe can now be collected once optimized.
+            t1.join(); t2.join();
+
+            t1 = null;
+            t2 = null;
+            safe = null;
+
+            // Force GC in case the work methods were not fully optimized
+            System.gc();
+            Thread.sleep(2000);
+        }
+        // Both may still hand cleanups to the reaper
+        if (SCHEDULER != null) {
+            SCHEDULER.shutdown();
+            SCHEDULER.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        if (BATCHER != null) {
+            BATCHER.shutdown();
+            BATCHER.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        REAPER.shutdown();
+    }
+}
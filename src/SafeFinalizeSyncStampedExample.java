@@ -0,0 +1,147 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A variant of {@link SafeFinalizeSyncRWExample} using a <code>StampedLock</code>.
+ *
+ * <p>The handshake is the same: the read lock is acquired while holding the monitor of the
+ * object, which the finalizer also acquires, and the cleanup task takes the write lock. However
+ * a <code>ReentrantReadWriteLock</code> maintains a per-thread hold count for every read
+ * acquisition, while a <code>StampedLock</code> read is a single CAS returning a stamp, which is
+ * then passed back on release. It is not reentrant, which is not needed here since the work
+ * method acquires the read lock exactly once.</p>
+ *
+ * <p>As in the original example, closing the example runs the cleanup task on the calling thread,
+ * where it waits for the write lock, and disarms the finalizer so nothing reaches the reaper. Only
+ * the first call does so. Work methods must not be called after closing.</p>
+ */
+public class SafeFinalizeSyncStampedExample implements AutoCloseable {
+    private final StampedLock lock = new StampedLock();
+
+    // Guarded by the monitor, which the finalizer holds as well
+    private boolean closed;
+
+    // Holds the reservation of the resource until the cleanup task releases it
+    private final CleanupBudget budget;
+
+    private static ExecutorService REAPER = Executors.newFixedThreadPool(2);
+
+    public SafeFinalizeSyncStampedExample() {
+        // Reserved before the constructor of Object registers the finalizer, see CleanupBudget
+        this(CleanupBudget.shared().reserve(CleanupBudget.RESOURCE_BYTES, 1));
+    }
+
+    private SafeFinalizeSyncStampedExample(CleanupBudget budget) {
+        this.budget = budget;
+    }
+
+    private void work()  {
+        System.err.println("Work starts");
+        StampedLock lock = this.lock;
+        long stamp;
+        synchronized (this) {
+            stamp = lock.readLock();
+        }
+        try {
+            System.gc();
+            Thread.sleep(10000L);
+            System.err.println("Work complete");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+
+    /**
+     * The separate cleanup task.
+     *
+     * <p>It must not reference the outer example class in any way.</p>
+     * <p>Instead, all values including any resources should be passed via construction.</p>
+     */
+    private static class CleanupTask implements Runnable {
+        private final StampedLock lock;
+        private final CleanupBudget budget;
+
+        CleanupTask(StampedLock lock, CleanupBudget budget) {
+            this.lock = lock;
+            this.budget = budget;
+        }
+
+        public void run() {
+            long stamp = lock.writeLock();
+            try {
+                System.err.println("Cleaning up!");
+                budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        new CleanupTask(lock, budget).run();
+    }
+
+    protected synchronized void finalize() {
+        if (closed) {
+            // Cleaned up by close(), no task for the reaper
+            return;
+        }
+        System.err.println("Finalize scheduling clean-up");
+
+        // Delegate to another thread so we do not block the JVM finalizer thread
+        REAPER.execute(new CleanupTask(lock, budget));
+    }
+
+     /*
+      * The remaining portion of the example is purely for simulation purposes, and is not
+      * actually part of the avoidance technique.
+      */
+
+    static class SimulateStackCall implements Runnable {
+        private SafeFinalizeSyncStampedExample safe;
+
+        SimulateStackCall(SafeFinalizeSyncStampedExample safe) {
+            this.safe = safe;
+        }
+
+        public void run() {
+            // Ensure the object is not heap-reachable from this Runnable
+            SafeFinalizeSyncStampedExample safe = this.safe;
+            this.safe = null;
+            safe.work();
+
+            // Force a GC in case the reference survived the work invocation
+            System.gc();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            System.out.println("Run " + (i + 1));
+            SafeFinalizeSyncStampedExample safe = new SafeFinalizeSyncStampedExample();
+            Thread t1 = new Thread(new SimulateStackCall(safe)), t2 = new Thread(new SimulateStackCall(safe));
+            t1.start(); t2.start();
+            // Safe can now be collected once optimized.
+            t1.join(); t2.join();
+
+            t1 = null;
+            t2 = null;
+            safe = null;
+
+            // Force GC in case the work methods were not fully optimized
+            System.gc();
+            Thread.sleep(2000);
+        }
+        REAPER.shutdown();
+    }
+}
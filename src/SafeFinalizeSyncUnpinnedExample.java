@@ -0,0 +1,89 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A variant of {@link SafeFinalizeSyncExample} that does not pin virtual threads.
+ *
+ * <p>A virtual thread that blocks while holding a monitor pins its carrier thread for the duration,
+ * so the synchronized, potentially blocking work method of the original example takes a carrier
+ * out of service for every call in progress.</p>
+ *
+ * <p>Here the work is serialized with a <code>ReentrantLock</code>, which a virtual thread can block
+ * on and hold while blocking without pinning. The monitor, which the finalizer also acquires, is
+ * only held to release that lock at the very end of the work. Acquiring it requires a reference to
+ * "this", and the work can not be reordered past the monitor exit, so finalization still can not
+ * happen before the work has completed. Since nothing blocks while the monitor is held, it never
+ * pins a carrier for longer than an uncontended lock release.</p>
+ *
+ * <p><code>close()</code> takes the same lock as the work method, so it waits for a call in
+ * progress without pinning either, releases the resource once, and disarms the finalizer. Like the
+ * work method, it lets go of the lock under the monitor, which publishes the closed flag to the
+ * finalizer. Work methods must not be called after closing.</p>
+ */
+public final class SafeFinalizeSyncUnpinnedExample implements AutoCloseable {
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Written under the lock, read by the finalizer under the monitor
+    private boolean closed;
+
+    // Holds the reservation of the resource until close() or the finalizer releases it
+    private final CleanupBudget budget;
+
+    public SafeFinalizeSyncUnpinnedExample() {
+        // Reserved before the constructor of Object registers the finalizer, see CleanupBudget
+        this(CleanupBudget.shared().reserve(CleanupBudget.RESOURCE_BYTES, 1));
+    }
+
+    private SafeFinalizeSyncUnpinnedExample(CleanupBudget budget) {
+        this.budget = budget;
+    }
+
+    private void work() throws Exception {
+        ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            System.err.println("Work starts");
+            System.gc();
+            Thread.sleep(10000L);
+            System.err.println("Work complete");
+        } finally {
+            // Held only for the release, keeps "this" reachable until the work is complete
+            synchronized (this) {
+                lock.unlock();
+            }
+        }
+    }
+
+    public void close() {
+        ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            if (!closed) {
+                closed = true;
+                System.err.println("Close");
+                budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+            }
+        } finally {
+            synchronized (this) {
+                lock.unlock();
+            }
+        }
+    }
+
+    protected synchronized void finalize() {
+        if (closed) {
+            // Already released by close()
+            return;
+        }
+        System.err.println("Finalize");
+        budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            System.out.println("Run " + (i + 1));
+            new SafeFinalizeSyncUnpinnedExample().work();
+            System.gc();
+            Thread.sleep(2000);
+        }
+    }
+}
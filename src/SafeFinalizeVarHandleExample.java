@@ -0,0 +1,106 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A portable replacement for {@link SafeFinalizeVolatileFieldUsingUnsafeExample} using a
+ * <code>java.lang.invoke.VarHandle</code>.
+ *
+ * <p>The release write at the end of the work method is the standard equivalent of
+ * <code>putOrderedInt</code>: it requires a reference to "this", and prior accesses can not
+ * be reordered after it, so the object stays reachable until the work has completed. It only
+ * costs a StoreStore/LoadStore barrier, which is a no-op on x86. As with the other field write
+ * techniques, the field is copied to a static during finalization as an optimizer safe-guard.</p>
+ *
+ * <p>The field itself is not volatile, and the value written is computed from a plain read, so
+ * unlike <code>counter + 1</code> on a volatile field the epilogue carries no load barrier either.
+ * Since the field only serves to keep "this" alive, losing increments is harmless.</p>
+ *
+ * <p>Note that <code>setOpaque</code> would not be sufficient here. An opaque write is only
+ * ordered with respect to other accesses of the same variable, so the preceding work could be
+ * moved after it.</p>
+ *
+ * <p>Unlike the unsafe version, the static initialization requires no reflection, does not
+ * trigger illegal access warnings and works on any JDK since 9.</p>
+ *
+ * <p>Closing the example releases the resource right away and disarms the finalizer. The closed
+ * flag is flipped with a <code>compareAndSet</code> through a second handle, so only the first of
+ * several concurrent calls releases anything. Work methods must not be called after closing.</p>
+ */
+public final class SafeFinalizeVarHandleExample implements AutoCloseable {
+    public static int STATIC_COUNTER = 0;
+    private static final VarHandle COUNTER;
+    private static final VarHandle CLOSED;
+
+    // Initialize with current static field value for an additional optimizer safe-guard
+    private int counter = STATIC_COUNTER;
+
+    // Volatile, so that the finalizer sees a close() that happened after construction
+    private volatile int closed;
+
+    // Holds the reservation of the resource until the finalizer releases it
+    private final CleanupBudget budget;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            COUNTER = lookup.findVarHandle(SafeFinalizeVarHandleExample.class, "counter", int.class);
+            CLOSED = lookup.findVarHandle(SafeFinalizeVarHandleExample.class, "closed", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public SafeFinalizeVarHandleExample() {
+        // Reserved before the constructor of Object registers the finalizer, see CleanupBudget
+        this(CleanupBudget.shared().reserve(CleanupBudget.RESOURCE_BYTES, 1));
+    }
+
+    private SafeFinalizeVarHandleExample(CleanupBudget budget) {
+        this.budget = budget;
+    }
+
+    public void work() throws Exception {
+        try {
+            System.err.println("Work starting");
+            System.gc();
+
+            // Do some work here, potentially blocking (simulate with sleep)
+            Thread.sleep(10000L);
+            System.err.println("Work completed");
+        } finally {
+            // Release write prevents the preceding work from being reordered after it,
+            // the plain read avoids the load barrier of a volatile read.
+            COUNTER.setRelease(this, counter + 1);
+        }
+    }
+
+    public void close() {
+        if (CLOSED.compareAndSet(this, 0, 1)) {
+            System.err.println("Close");
+            budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+        }
+    }
+
+    protected void finalize() throws Throwable {
+        super.finalize();
+        if (closed != 0) {
+            // Released by close(), the static copy can be skipped as well
+            return;
+        }
+        // Copy value to a public static for an additional optimizer safe-guard
+        // Only needs to be done IF the finalizer is freeing the resource, if the user properly freed
+        // the resource it can be skipped.
+        STATIC_COUNTER = (int) COUNTER.getAcquire(this);
+        System.err.println("Finalize");
+        budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            System.out.println("Run " + (i + 1));
+            new SafeFinalizeVarHandleExample().work();
+            System.gc();
+            Thread.sleep(2000);
+        }
+    }
+}
@@ -15,15 +15,33 @@ import sun.misc.Unsafe;
  *
  * <p>The advantage of this approach is that does not involve any form of locking, and only uses a cheap
  * barrier, which is free on many platforms, including x86.</p>
+ *
+ * <p>Closing the example explicitly releases the resource and disarms the finalizer, which then
+ * skips both the static copy and the clean-up. Work methods must not be called after closing.
+ * Leaks are reported and counted as in {@link SafeFinalizeVolatileFieldExample}.</p>
  */
-public final class SafeFinalizeVolatileFieldUsingUnsafeExample {
+public final class SafeFinalizeVolatileFieldUsingUnsafeExample implements AutoCloseable {
     static int STATIC_COUNTER = 0;
     private static Unsafe unsafe;
     private static long counterOffset;
+    private static long closedOffset;
 
     // Initialize with current static field value for an additional optimizer safe-guard
     volatile int counter = STATIC_COUNTER;
 
+    // Volatile, since finalization only happens-after construction, not after close(). An int,
+    // so that concurrent close() calls can race for it with a compare and set
+    private volatile int closed;
+
+    // Allocation site, only recorded for sampled instances
+    private final Throwable allocation = LeakDetector.track();
+
+    // Holds the reservation of the resource until it is released
+    private final CleanupBudget budget;
+
+    private static final GuardedObjectStats STATS =
+            GuardedObjectStats.register(SafeFinalizeVolatileFieldUsingUnsafeExample.class);
+
 
     static {
         Field field = null;
@@ -33,6 +51,8 @@ public final class SafeFinalizeVolatileFieldUsingUnsafeExample {
             unsafe = (Unsafe) field.get(null);
             field = SafeFinalizeVolatileFieldUsingUnsafeExample.class.getDeclaredField("counter");
             counterOffset = unsafe.objectFieldOffset(field);
+            field = SafeFinalizeVolatileFieldUsingUnsafeExample.class.getDeclaredField("closed");
+            closedOffset = unsafe.objectFieldOffset(field);
         } catch (IllegalAccessException e) {
             throw new RuntimeException(e);
         } catch (NoSuchFieldException e) {
@@ -40,6 +60,16 @@ public final class SafeFinalizeVolatileFieldUsingUnsafeExample {
         }
     }
 
+    public SafeFinalizeVolatileFieldUsingUnsafeExample() {
+        // Reserved before the constructor of Object registers the finalizer, see CleanupBudget
+        this(CleanupBudget.shared().reserve(CleanupBudget.RESOURCE_BYTES, 1));
+    }
+
+    private SafeFinalizeVolatileFieldUsingUnsafeExample(CleanupBudget budget) {
+        this.budget = budget;
+        STATS.created();
+    }
+
     public void work() throws Exception {
         try {
             System.err.println("Work starting");
@@ -56,13 +86,31 @@ public final class SafeFinalizeVolatileFieldUsingUnsafeExample {
         }
     }
 
+    public void close() {
+        // Only the caller that flips the flag releases the resource
+        if (unsafe.compareAndSwapInt(this, closedOffset, 0, 1)) {
+            System.err.println("Close");
+            STATS.closed();
+            budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+            STATS.cleaned();
+        }
+    }
+
     protected void finalize() throws Throwable {
         super.finalize();
+        if (closed != 0) {
+            // Already released, nothing for the safety net to do
+            return;
+        }
+        LeakDetector.leaked(getClass(), allocation);
+        STATS.finalized();
         // Copy value to a public static for an additional optimizer safe-guard
         // Only needs to be done IF the finalizer is freeing the resource, if the user properly freed
         // the resource it can be skipped.
         STATIC_COUNTER = counter;
         System.err.println("Finalize");
+        budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+        STATS.cleanedAfterFinalization();
     }
 
     public static void main(String[] args) throws Exception {
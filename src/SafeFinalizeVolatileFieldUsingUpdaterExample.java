@@ -14,8 +14,12 @@ import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
  *
  * <p>The advantage of this approach is that does not involve any form of locking, and only uses a cheap
  * barrier, which is free on many platforms, including x86.</p>
+ *
+ * <p>Closing the example explicitly releases the resource and disarms the finalizer, which then
+ * skips both the static copy and the clean-up. Work methods must not be called after closing.
+ * Leaks are reported and counted as in {@link SafeFinalizeVolatileFieldExample}.</p>
  */
-public final class SafeFinalizeVolatileFieldUsingUpdaterExample {
+public final class SafeFinalizeVolatileFieldUsingUpdaterExample implements AutoCloseable {
     public static int STATIC_COUNTER = 0;
 
     private static AtomicIntegerFieldUpdater<SafeFinalizeVolatileFieldUsingUpdaterExample>
@@ -23,6 +27,32 @@ public final class SafeFinalizeVolatileFieldUsingUpdaterExample {
     // Initialize with current static field value for an additional optimizer safe-guard
     private volatile int counter = STATIC_COUNTER;
 
+    // Volatile, since finalization only happens-after construction, not after close(). An int,
+    // so that concurrent close() calls can race for it with a compare and set
+    private volatile int closed;
+
+    // Allocation site, only recorded for sampled instances
+    private final Throwable allocation = LeakDetector.track();
+
+    // Holds the reservation of the resource until it is released
+    private final CleanupBudget budget;
+
+    private static final AtomicIntegerFieldUpdater<SafeFinalizeVolatileFieldUsingUpdaterExample> CLOSED =
+            AtomicIntegerFieldUpdater.newUpdater(SafeFinalizeVolatileFieldUsingUpdaterExample.class, "closed");
+
+    private static final GuardedObjectStats STATS =
+            GuardedObjectStats.register(SafeFinalizeVolatileFieldUsingUpdaterExample.class);
+
+    public SafeFinalizeVolatileFieldUsingUpdaterExample() {
+        // Reserved before the constructor of Object registers the finalizer, see CleanupBudget
+        this(CleanupBudget.shared().reserve(CleanupBudget.RESOURCE_BYTES, 1));
+    }
+
+    private SafeFinalizeVolatileFieldUsingUpdaterExample(CleanupBudget budget) {
+        this.budget = budget;
+        STATS.created();
+    }
+
     public void work() throws Exception {
         try {
             System.err.println("Work starting");
@@ -36,14 +66,32 @@ public final class SafeFinalizeVolatileFieldUsingUpdaterExample {
         }
     }
 
+    public void close() {
+        // Only the caller that flips the flag releases the resource
+        if (CLOSED.compareAndSet(this, 0, 1)) {
+            System.err.println("Close");
+            STATS.closed();
+            budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+            STATS.cleaned();
+        }
+    }
+
     protected void finalize() throws Throwable {
         super.finalize();
+        if (closed != 0) {
+            // Already released, nothing for the safety net to do
+            return;
+        }
+        LeakDetector.leaked(getClass(), allocation);
+        STATS.finalized();
 
         // Copy value to a public static for an additional optimizer safe-guard
         // Only needs to be done IF the finalizer is freeing the resource, if the user properly freed
         // the resource it can be skipped.
         STATIC_COUNTER = counter;
         System.err.println("Finalize");
+        budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+        STATS.cleanedAfterFinalization();
     }
 
     public static void main(String[] args) throws Exception {
@@ -0,0 +1,200 @@
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A finalize-free variant of {@link SafeFinalizeSyncRWExample}, built directly on
+ * <code>PhantomReference</code>.
+ *
+ * <p>Everything the cleanup needs lives in a separate {@link State} holder: the read/write lock and
+ * the resource. The example only references its state, and a phantom reference to the example
+ * carries the same state, so that it is still available once the example itself is unreachable.
+ * The read/write handshake is unchanged: work methods acquire the read lock while holding the
+ * monitor of <code>this</code>, and the cleanup acquires the write lock before releasing the
+ * resource.</p>
+ *
+ * <p>Unlike a finalizable object, the example is reclaimed by the same GC that discovers it is
+ * unreachable, as nothing ever resurrects it. The references are kept strongly reachable in a set
+ * until they have been processed. A dedicated reaper thread drains the reference queue in batches:
+ * it blocks in <code>remove</code> with a timeout for the first reference, then takes everything
+ * else the GC has enqueued with a tight <code>poll()</code> loop, up to <code>reaper.batchSize</code>
+ * (default 1024) references, without waiting on the queue again. The reaper exists only for this
+ * purpose, so it may block on the write lock.</p>
+ *
+ * <p>The resource is accounted for in the {@link CleanupBudget} until the state has released it.
+ * Nothing is registered before the reference is created, so unlike the finalizable examples the
+ * budget can simply be reserved first in the constructor.</p>
+ *
+ * <p>Closing the example removes its reference from the live set, clears it so that the GC never
+ * enqueues it, and cleans up the state on the calling thread, waiting for the write lock. Removal
+ * from the set decides who cleans up: a reference the reaper dequeues after a close, or a second
+ * close, finds it gone and does nothing. Work methods must not be called after closing.</p>
+ */
+public class SafePhantomSyncRWExample implements AutoCloseable {
+    static final int BATCH_SIZE = Integer.getInteger("reaper.batchSize", 1024);
+    private static final long REMOVE_TIMEOUT_MILLIS = 1000L;
+
+    private static final ReferenceQueue<SafePhantomSyncRWExample> QUEUE =
+            new ReferenceQueue<SafePhantomSyncRWExample>();
+
+    // Keeps every reference reachable until the reaper has processed it
+    private static final Set<StateReference> LIVE = ConcurrentHashMap.newKeySet();
+
+    private static final GuardedObjectStats STATS =
+            GuardedObjectStats.register(SafePhantomSyncRWExample.class);
+
+    private final State state;
+    private final StateReference ref;
+
+    static {
+        Thread reaper = new Thread(SafePhantomSyncRWExample::reap, "SafePhantomSyncRWExample-reaper");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    public SafePhantomSyncRWExample() {
+        state = new State(CleanupBudget.shared().reserve(CleanupBudget.RESOURCE_BYTES, 1));
+        ref = new StateReference(this, state);
+        LIVE.add(ref);
+        STATS.created();
+    }
+
+    private void work()  {
+        System.err.println("Work starts");
+        ReentrantReadWriteLock lock = state.lock;
+        try {
+            synchronized (this) {
+                lock.readLock().lock();
+            }
+            System.gc();
+            Thread.sleep(10000L);
+            System.err.println("Work complete");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The state shared by the example and its reference.
+     *
+     * <p>It must not reference the outer example class in any way.</p>
+     */
+    private static final class State {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final CleanupBudget budget;
+
+        // Stands in for a native handle or similar resource
+        long resource = 1L;
+
+        State(CleanupBudget budget) {
+            this.budget = budget;
+        }
+
+        void cleanup() {
+            lock.writeLock().lock();
+            try {
+                resource = 0L;
+                System.err.println("Cleaning up!");
+                budget.release(CleanupBudget.RESOURCE_BYTES, 1);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static final class StateReference extends PhantomReference<SafePhantomSyncRWExample> {
+        final State state;
+
+        StateReference(SafePhantomSyncRWExample referent, State state) {
+            super(referent, QUEUE);
+            this.state = state;
+        }
+    }
+
+    private static void reap() {
+        while (true) {
+            try {
+                Reference<? extends SafePhantomSyncRWExample> ref = QUEUE.remove(REMOVE_TIMEOUT_MILLIS);
+                int batch = 0;
+                while (ref != null) {
+                    clean((StateReference) ref);
+                    ref = ++batch < BATCH_SIZE ? QUEUE.poll() : null;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable t) {
+                // A failing cleanup must not stop the reaper
+                System.err.println("Cleanup failed: " + t);
+                t.printStackTrace();
+            }
+        }
+    }
+
+    private static void clean(StateReference ref) {
+        if (!LIVE.remove(ref)) {
+            // Closed after the GC had enqueued it
+            return;
+        }
+        // Left to the GC without being closed, the counterpart of being finalized
+        STATS.finalized();
+        ref.state.cleanup();
+        STATS.cleanedAfterFinalization();
+    }
+
+    public void close() {
+        StateReference ref = this.ref;
+        if (LIVE.remove(ref)) {
+            ref.clear();
+            STATS.closed();
+            ref.state.cleanup();
+            STATS.cleaned();
+        }
+    }
+
+     /*
+      * The remaining portion of the example is purely for simulation purposes, and is not
+      * actually part of the avoidance technique.
+      */
+
+    static class SimulateStackCall implements Runnable {
+        private SafePhantomSyncRWExample safe;
+
+        SimulateStackCall(SafePhantomSyncRWExample safe) {
+            this.safe = safe;
+        }
+
+        public void run() {
+            // Ensure the object is not heap-reachable from this Runnable
+            SafePhantomSyncRWExample safe = this.safe;
+            this.safe = null;
+            safe.work();
+
+            // Force a GC in case the reference survived the work invocation
+            System.gc();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            System.out.println("Run " + (i + 1));
+            SafePhantomSyncRWExample safe = new SafePhantomSyncRWExample();
+            Thread t1 = new Thread(new SimulateStackCall(safe)), t2 = new Thread(new SimulateStackCall(safe));
+            t1.start(); t2.start();
+            // Safe can now be collected once optimized.
+            t1.join(); t2.join();
+
+            t1 = null;
+            t2 = null;
+            safe = null;
+
+            // Force GC in case the work methods were not fully optimized
+            System.gc();
+            Thread.sleep(2000);
+        }
+    }
+}
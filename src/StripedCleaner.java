@@ -0,0 +1,155 @@
+import java.lang.ref.Cleaner;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+
+/**
+ * A <code>java.lang.ref.Cleaner</code> replacement whose registrations do not contend.
+ *
+ * <p>A finalizable object is added to the single list of unfinalized objects of the JDK under a
+ * global lock when it is allocated, and every registration with a <code>Cleaner</code> takes the
+ * lock of the one list of that cleaner. Allocating guarded objects on many cores at once is
+ * serialized on that lock. Here the cleanable references are kept in a number of independent
+ * stripes, each a doubly linked list with its own lock, and a thread always registers with the
+ * stripe picked by its id. Threads then only share a lock when their ids collide, and the reaper
+ * removing a cleaned reference only takes the lock of its stripe. The number of stripes defaults
+ * to twice the number of processors, rounded up to a power of two, and can be set with
+ * <code>-Dcleaner.stripes</code>.</p>
+ *
+ * <p>A single daemon reaper thread drains the reference queue in batches like
+ * {@link SafePhantomSyncRWExample}, and may block in a cleanup action. As with a
+ * <code>Cleaner</code>, actions must not reference the object they clean up after.</p>
+ */
+public final class StripedCleaner {
+    static final int STRIPES = Integer.getInteger("cleaner.stripes",
+            Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1);
+    private static final int BATCH_SIZE = 1024;
+    private static final long REMOVE_TIMEOUT_MILLIS = 1000L;
+
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+    private final Stripe[] stripes;
+    private final int mask;
+
+    private StripedCleaner(String name, int stripes) {
+        if (Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Stripes must be a power of two: " + stripes);
+        }
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        mask = stripes - 1;
+
+        Thread reaper = new Thread(this::reap, name + "-reaper");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    public static StripedCleaner create(String name) {
+        return new StripedCleaner(name, STRIPES);
+    }
+
+    /**
+     * Registers an action to run once the object has become phantom reachable.
+     */
+    public Cleaner.Cleanable register(Object obj, Runnable action) {
+        if (obj == null || action == null) {
+            throw new NullPointerException();
+        }
+        Stripe stripe = stripes[(int) Thread.currentThread().getId() & mask];
+        Ref ref = new Ref(obj, queue, stripe, action);
+        stripe.insert(ref);
+        // The object must stay reachable until the reference is linked
+        Reference.reachabilityFence(obj);
+        return ref;
+    }
+
+    private static final class Stripe {
+        // Sentinel of a circular list, only linked and unlinked under the stripe monitor
+        private final Ref list = new Sentinel();
+
+        synchronized void insert(Ref ref) {
+            ref.prev = list;
+            ref.next = list.next;
+            list.next.prev = ref;
+            list.next = ref;
+        }
+
+        synchronized boolean remove(Ref ref) {
+            if (ref.next == ref) {
+                // Already cleaned
+                return false;
+            }
+            ref.prev.next = ref.next;
+            ref.next.prev = ref.prev;
+            ref.prev = ref;
+            ref.next = ref;
+            return true;
+        }
+    }
+
+    private static class Ref extends PhantomReference<Object> implements Cleaner.Cleanable {
+        private final Stripe stripe;
+        private final Runnable action;
+        Ref prev = this;
+        Ref next = this;
+
+        // For the sentinel
+        Ref() {
+            super(null, null);
+            stripe = null;
+            action = null;
+        }
+
+        Ref(Object referent, ReferenceQueue<Object> queue, Stripe stripe, Runnable action) {
+            super(referent, queue);
+            this.stripe = stripe;
+            this.action = action;
+        }
+
+        /**
+         * Runs the action at most once, either explicitly or from the reaper.
+         */
+        public void clean() {
+            if (stripe.remove(this)) {
+                clear();
+                action.run();
+            }
+        }
+    }
+
+    /**
+     * The sentinel of a stripe, padded at the end.
+     *
+     * <p>Each stripe is allocated right before its sentinel, so the links of sentinel i, written
+     * under monitor i, would otherwise share a cache line with the header of stripe i + 1, which
+     * holds monitor i + 1. Fields of a subclass are laid out after those of its superclass, so the
+     * padding follows the links. This only holds while the objects keep their allocation order,
+     * which copying collectors usually, but not necessarily, preserve. A guarantee would need the
+     * internal <code>@jdk.internal.vm.annotation.Contended</code> annotation, which requires
+     * <code>--add-exports java.base/jdk.internal.vm.annotation=ALL-UNNAMED</code> to compile and
+     * <code>-XX:-RestrictContended</code> to take effect outside the JDK.</p>
+     */
+    private static final class Sentinel extends Ref {
+        long p1, p2, p3, p4, p5, p6, p7, p8;
+    }
+
+    private void reap() {
+        while (true) {
+            try {
+                Reference<?> ref = queue.remove(REMOVE_TIMEOUT_MILLIS);
+                int batch = 0;
+                while (ref != null) {
+                    ((Ref) ref).clean();
+                    ref = ++batch < BATCH_SIZE ? queue.poll() : null;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable t) {
+                // A failing action must not stop the reaper
+                System.err.println("Cleanup failed: " + t);
+                t.printStackTrace();
+            }
+        }
+    }
+}